@@ -26,7 +26,7 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.slf4j.Logger;
@@ -34,7 +34,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.List;
 
 
@@ -67,8 +66,7 @@ public abstract class AbstractAdapterService implements AdapterService, Brewable
         HttpEntity httpEntity = response.getEntity();
         if (httpEntity != null) {
           InputStream inputStream = httpEntity.getContent();
-          InputStreamReader reader = new InputStreamReader(inputStream);
-          AdapterDescriptors adapterDescriptors = jsonMapper.read(reader, AdapterDescriptors.class);
+          AdapterDescriptors adapterDescriptors = jsonMapper.read(inputStream, AdapterDescriptors.class);
           adapter.setActivityDescriptors(adapterDescriptors);
           saveAdapter(adapter);
         }
@@ -88,8 +86,8 @@ public abstract class AbstractAdapterService implements AdapterService, Brewable
         CloseableHttpClient httpClient = HttpClients.createDefault();
         
         HttpPost request = new HttpPost(adapter.url+"/execute");
-        String requestEntityJsonString = jsonMapper.write(executeRequest);
-        request.setEntity(new StringEntity(requestEntityJsonString, ContentType.APPLICATION_JSON));
+        byte[] requestEntityJson = jsonMapper.writeBytes(executeRequest);
+        request.setEntity(new ByteArrayEntity(requestEntityJson, ContentType.APPLICATION_JSON));
         CloseableHttpResponse response = httpClient.execute(request);
 
         AdapterStatus adapterStatus = null;
@@ -103,8 +101,7 @@ public abstract class AbstractAdapterService implements AdapterService, Brewable
         if (httpEntity != null) {
           try {
             InputStream inputStream = httpEntity.getContent();
-            InputStreamReader reader = new InputStreamReader(inputStream);
-            executeResponse = jsonMapper.read(reader, ExecuteResponse.class);
+            executeResponse = jsonMapper.read(inputStream, ExecuteResponse.class);
             log.debug("Parsed adapter activity execute response");
           } catch (Exception e) {
             log.error("Problem while parsing the adapter activity execute response: "+e.getMessage(), e);
@@ -130,8 +127,8 @@ public abstract class AbstractAdapterService implements AdapterService, Brewable
         CloseableHttpClient httpClient = HttpClients.createDefault();
         
         HttpPost request = new HttpPost(adapter.url+"/items");
-        String requestEntityJsonString = jsonMapper.write(findItemsRequest);
-        request.setEntity(new StringEntity(requestEntityJsonString, ContentType.APPLICATION_JSON));
+        byte[] requestEntityJson = jsonMapper.writeBytes(findItemsRequest);
+        request.setEntity(new ByteArrayEntity(requestEntityJson, ContentType.APPLICATION_JSON));
         CloseableHttpResponse response = httpClient.execute(request);
 
         AdapterStatus adapterStatus = null;
@@ -145,8 +142,7 @@ public abstract class AbstractAdapterService implements AdapterService, Brewable
         if (httpEntity != null) {
           try {
             InputStream inputStream = httpEntity.getContent();
-            InputStreamReader reader = new InputStreamReader(inputStream);
-            items = jsonMapper.read(reader, new GenericType(List.class, ItemReference.class));
+            items = jsonMapper.read(inputStream, new GenericType(List.class, ItemReference.class));
             log.debug("Parsed adapter data source find items");
           } catch (Exception e) {
             log.error("Problem while parsing the adapter activity execute response: "+e.getMessage(), e);
@@ -14,11 +14,17 @@
 package com.effektif.mongo;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 
 
+/**
+ * Declarative index definition, 
+ * created with {@link MongoCollection#ensureIndexes(java.util.List)}.
+ */
 public class Index {
   
   protected BasicDBObject index = new BasicDBObject();
+  protected BasicDBObject options = new BasicDBObject();
 
   public Index ascending(String... fields) {
     if (fields!=null) {
@@ -38,11 +44,43 @@ public class Index {
     return this;
   }
 
+  public Index name(String name) {
+    this.options.put("name", name);
+    return this;
+  }
+
+  public Index unique() {
+    this.options.put("unique", true);
+    return this;
+  }
+
+  public Index sparse() {
+    this.options.put("sparse", true);
+    return this;
+  }
+
+  /** only documents matching the filter are indexed. 
+   * Mongo only supports equality, $exists:true, comparisons 
+   * and $type in the filter. */
+  public Index partialFilter(DBObject partialFilterExpression) {
+    this.options.put("partialFilterExpression", partialFilterExpression);
+    return this;
+  }
+
   public BasicDBObject get() {
     return index;
   }
 
+  public BasicDBObject getOptions() {
+    return options;
+  }
+
   public boolean isEmpty() {
     return index.isEmpty();
   }
+
+  @Override
+  public String toString() {
+    return index+(options.isEmpty() ? "" : " "+options);
+  }
 }
@@ -18,6 +18,7 @@ interface JobFields {
   String KEY = "key";
   String DUE_DATE = "dueDate";
   String LOCK = "lock";
+  String CLAIM = "claim";
   String EXECUTIONS = "executions";
   String RETRIES = "retries";
   String RETRY_DELAY = "retryDelay";
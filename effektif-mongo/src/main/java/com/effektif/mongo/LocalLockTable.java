@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.mongo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.effektif.workflow.api.model.WorkflowInstanceId;
+
+
+/** Striped in-memory table of the workflow instances locked by this engine.
+ * 
+ * The table never blocks: an attempt to lock a workflow instance that is 
+ * already locked locally fails fast.  Callers that wait for the workflow 
+ * instance to be unlocked, like the requests queued by 
+ * {@link com.effektif.workflow.impl.WorkflowInstanceLocks}, mark the lock 
+ * as {@link #waiting(WorkflowInstanceId) contended}.  When the holder releases 
+ * a contended lock, the db lock is kept and handed off to the next local 
+ * attempt together with a snapshot of the workflow instance, which saves 
+ * the db unlock, the db lock and the reload of the document.  Handoffs that 
+ * are not picked up within the handoff timeout expire so that the db lock 
+ * can be released.  
+ * The db lock remains the arbiter between engines.
+ * 
+ * @param <T> the type of the workflow instance snapshots that are handed off 
+ */
+public class LocalLockTable<T> {
+
+  protected Stripe<T>[] stripes;
+  protected long handoffTimeout;
+  protected AtomicInteger handoffs = new AtomicInteger();
+
+  @SuppressWarnings("unchecked")
+  public LocalLockTable(int stripeCount, long handoffTimeout) {
+    this.stripes = new Stripe[stripeCount];
+    for (int i=0; i<stripeCount; i++) {
+      stripes[i] = new Stripe<>();
+    }
+    this.handoffTimeout = handoffTimeout;
+  }
+
+  /** Reserves the workflow instance or takes over a handed off lock.
+   * @return null if the workflow instance is locked by this engine, a grant 
+   *   without handoff if the caller has to lock the workflow instance in the db, 
+   *   or a grant with the handoff from the previous local holder. */
+  public Grant<T> acquire(WorkflowInstanceId workflowInstanceId) {
+    Stripe<T> stripe = getStripe(workflowInstanceId);
+    synchronized (stripe) {
+      LocalLock<T> lock = stripe.locks.get(workflowInstanceId);
+      if (lock==null) {
+        stripe.locks.put(workflowInstanceId, new LocalLock<T>());
+        return new Grant<>(false, null);
+      }
+      if (lock.isHandedOff) {
+        Grant<T> grant = new Grant<>(true, lock.handoff);
+        handoffs.decrementAndGet();
+        lock.isHandedOff = false;
+        lock.isContended = false;
+        lock.handoff = null;
+        return grant;
+      }
+      return null;
+    }
+  }
+
+  /** to be called when a rejected caller waits for the workflow instance to be 
+   * unlocked locally, so that the holder keeps the db lock for it. 
+   * Has no effect if the workflow instance is not locked by this engine. */
+  public void waiting(WorkflowInstanceId workflowInstanceId) {
+    Stripe<T> stripe = getStripe(workflowInstanceId);
+    synchronized (stripe) {
+      LocalLock<T> lock = stripe.locks.get(workflowInstanceId);
+      if (lock!=null && !lock.isHandedOff) {
+        lock.isContended = true;
+      }
+    }
+  }
+
+  /** to be called when the db lock for a reservation failed */
+  public void dbLockFailed(WorkflowInstanceId workflowInstanceId) {
+    Stripe<T> stripe = getStripe(workflowInstanceId);
+    synchronized (stripe) {
+      stripe.locks.remove(workflowInstanceId);
+    }
+  }
+
+  /** registers a workflow instance that was locked in the db without reservation.
+   * Has no effect if the workflow instance is already in the table. */
+  public void register(WorkflowInstanceId workflowInstanceId) {
+    Stripe<T> stripe = getStripe(workflowInstanceId);
+    synchronized (stripe) {
+      if (!stripe.locks.containsKey(workflowInstanceId)) {
+        stripe.locks.put(workflowInstanceId, new LocalLock<T>());
+      }
+    }
+  }
+
+  /** @return true if a caller is {@link #waiting(WorkflowInstanceId) waiting} for the lock in which case 
+   * the caller must keep the db lock and call {@link #handOff(WorkflowInstanceId, Object)}, 
+   * false if the caller has to unlock the workflow instance in the db. */
+  public boolean release(WorkflowInstanceId workflowInstanceId) {
+    Stripe<T> stripe = getStripe(workflowInstanceId);
+    synchronized (stripe) {
+      LocalLock<T> lock = stripe.locks.get(workflowInstanceId);
+      if (lock==null) {
+        return false;
+      }
+      if (lock.isContended) {
+        return true;
+      }
+      stripe.locks.remove(workflowInstanceId);
+      return false;
+    }
+  }
+
+  /** passes the lock on to the next local attempt after {@link #release(WorkflowInstanceId)} returned true.
+   * @param handoff a snapshot of the workflow instance or null if the next holder has to reload it. */
+  public void handOff(WorkflowInstanceId workflowInstanceId, T handoff) {
+    Stripe<T> stripe = getStripe(workflowInstanceId);
+    synchronized (stripe) {
+      LocalLock<T> lock = stripe.locks.get(workflowInstanceId);
+      if (lock!=null && !lock.isHandedOff) {
+        lock.handoff = handoff;
+        lock.isHandedOff = true;
+        lock.handoffDeadline = System.currentTimeMillis() + handoffTimeout;
+        handoffs.incrementAndGet();
+      }
+    }
+  }
+
+  /** removes the handoffs that were not picked up before the handoff timeout.
+   * @return the workflow instances that the caller has to unlock in the db. */
+  public List<WorkflowInstanceId> removeExpiredHandoffs() {
+    if (handoffs.get()==0) {
+      return Collections.emptyList();
+    }
+    List<WorkflowInstanceId> expired = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    for (Stripe<T> stripe: stripes) {
+      synchronized (stripe) {
+        Iterator<Map.Entry<WorkflowInstanceId, LocalLock<T>>> iterator = stripe.locks.entrySet().iterator();
+        while (iterator.hasNext()) {
+          Map.Entry<WorkflowInstanceId, LocalLock<T>> entry = iterator.next();
+          LocalLock<T> lock = entry.getValue();
+          if (lock.isHandedOff && lock.handoffDeadline<=now) {
+            iterator.remove();
+            handoffs.decrementAndGet();
+            expired.add(entry.getKey());
+          }
+        }
+      }
+    }
+    return expired;
+  }
+
+  /** true if a caller is waiting for the workflow instance to be unlocked by this engine */
+  public boolean isContended(WorkflowInstanceId workflowInstanceId) {
+    Stripe<T> stripe = getStripe(workflowInstanceId);
+    synchronized (stripe) {
+      LocalLock<T> lock = stripe.locks.get(workflowInstanceId);
+      return lock!=null && lock.isContended;
+    }
+  }
+
+  protected Stripe<T> getStripe(WorkflowInstanceId workflowInstanceId) {
+    int hash = workflowInstanceId.hashCode();
+    hash ^= (hash >>> 16);
+    return stripes[(hash & 0x7fffffff) % stripes.length];
+  }
+
+  public static class Grant<T> {
+    protected boolean isHandoff;
+    protected T handoff;
+    public Grant(boolean isHandoff, T handoff) {
+      this.isHandoff = isHandoff;
+      this.handoff = handoff;
+    }
+    /** true if the db lock was handed off by a local holder, false if 
+     * the caller has to lock the workflow instance in the db */
+    public boolean isHandoff() {
+      return isHandoff;
+    }
+    /** snapshot of the workflow instance or null if it has to be reloaded */
+    public T getHandoff() {
+      return handoff;
+    }
+  }
+
+  protected static class Stripe<T> {
+    Map<WorkflowInstanceId, LocalLock<T>> locks = new HashMap<>();
+  }
+
+  protected static class LocalLock<T> {
+    boolean isContended;
+    boolean isHandedOff;
+    long handoffDeadline;
+    T handoff;
+  }
+}
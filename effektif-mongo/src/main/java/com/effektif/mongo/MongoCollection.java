@@ -19,15 +19,21 @@ import static com.effektif.mongo.MongoDb._ID;
 
 import com.mongodb.AggregationOutput;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.MongoException;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -59,6 +65,74 @@ public class MongoCollection {
     return writeResult;
   }
   
+  /** inserts all documents with one unordered bulk write so that a failing 
+   * document doesn't prevent the others from being inserted.
+   * @return the write errors, empty if all documents were inserted. 
+   * {@link BulkWriteError#getIndex()} refers to the position in the given list. */
+  public List<BulkWriteError> insertAll(String description, List<BasicDBObject> os) {
+    if (os.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (log.isDebugEnabled())  {
+      log.debug("--"+description+"-> "+os.size()+" documents");
+    }
+    BulkWriteOperation bulk = dbCollection.initializeUnorderedBulkOperation();
+    for (BasicDBObject o: os) {
+      bulk.insert(o);
+    }
+    List<BulkWriteError> writeErrors;
+    try {
+      BulkWriteResult bulkWriteResult = bulk.execute(getWriteConcern(description));
+      if (log.isDebugEnabled())  {
+        log.debug("<-"+description+"-- "+bulkWriteResult);
+      }
+      writeErrors = Collections.emptyList();
+    } catch (BulkWriteException e) {
+      if (log.isDebugEnabled())  {
+        log.debug("<-"+description+"-- "+e.getWriteResult()+" "+e.getWriteErrors().size()+" errors");
+      }
+      writeErrors = e.getWriteErrors();
+    }
+    return writeErrors;
+  }
+
+  /** applies the updates one after the other to the document(s) matching the query 
+   * with one ordered bulk write, so that updates which can't be combined 
+   * in a single update document are still sent in one round trip. */
+  public BulkWriteResult updateAll(String description, DBObject query, List<DBObject> updates) {
+    if (log.isDebugEnabled())  {
+      log.debug("--"+dbCollection.getName()+"-> "+description+" q="+toString(query)+" u="+toString(updates));
+    }
+    BulkWriteOperation bulk = dbCollection.initializeOrderedBulkOperation();
+    for (DBObject update: updates) {
+      bulk.find(query).updateOne(update);
+    }
+    BulkWriteResult bulkWriteResult = bulk.execute(getWriteConcern(description));
+    if (log.isDebugEnabled())  {
+      log.debug("<-"+dbCollection.getName()+"-- "+bulkWriteResult);
+    }
+    return bulkWriteResult;
+  }
+
+  /** creates the indexes that don't exist yet.  Failures are logged 
+   * and don't stop the others, eg when an index with the same keys 
+   * but different options already exists. */
+  public void ensureIndexes(List<Index> indexes) {
+    if (indexes==null) {
+      return;
+    }
+    for (Index index: indexes) {
+      try {
+        if (log.isDebugEnabled())  {
+          log.debug("--"+dbCollection.getName()+"-> ensure index "+index);
+        }
+        dbCollection.createIndex(index.get(), index.getOptions());
+      } catch (MongoException e) {
+        log.warn("Couldn't create index "+index+" on "+dbCollection.getName()+": "+e.getMessage());
+      }
+    }
+  }
+
   public WriteResult save(String description, BasicDBObject dbObject) {
     if (log.isDebugEnabled()) {
       log.debug("--"+dbCollection.getName()+"-> "+description+" "+toString(dbObject));
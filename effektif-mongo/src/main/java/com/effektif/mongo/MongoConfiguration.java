@@ -17,6 +17,7 @@ package com.effektif.mongo;
 
 import com.effektif.workflow.impl.configuration.DefaultConfiguration;
 import com.effektif.workflow.impl.util.Lists;
+import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
@@ -47,6 +48,17 @@ public class MongoConfiguration extends DefaultConfiguration {
   protected boolean isPretty;
   protected MongoClientOptions.Builder optionBuilder = new MongoClientOptions.Builder();
   protected boolean storeWorkflowIdsAsStrings = false;
+  protected boolean isLocalLocking = false;
+  protected int localLockStripes = 64;
+  protected long localLockHandoffTimeout = 5000;
+  protected boolean isCreateIndexes = true;
+  protected boolean isArchiveActivityInstances = false;
+  protected int jobPartitions = 0;
+  protected long jobPartitionLeaseTime = 60000;
+  protected String jobPartitionLeasesCollectionName = "jobPartitionLeases";
+  protected List<Index> workflowsIndexes = createDefaultWorkflowsIndexes();
+  protected List<Index> workflowInstancesIndexes = createDefaultWorkflowInstancesIndexes();
+  protected List<Index> jobsIndexes = createDefaultJobsIndexes();
 
   public MongoConfiguration() {
     brewery.ingredient(this);
@@ -58,6 +70,7 @@ public class MongoConfiguration extends DefaultConfiguration {
     brewery.ingredient(new MongoWorkflowStore());
     brewery.ingredient(new MongoWorkflowInstanceStore());
     brewery.ingredient(new MongoJobStore());
+    brewery.ingredient(new MongoJobPartitions());
     brewery.ingredient(new MongoObjectMappingsBuilder());
   }
   
@@ -140,6 +153,99 @@ public class MongoConfiguration extends DefaultConfiguration {
     return this;
   }
 
+  /** enables the {@link LocalLockTable} so that threads of this engine that wait 
+   * for the same workflow instance get the lock handed off without going to the db.  
+   * By default, threads of this engine always lock workflow instances in the db. */
+  public MongoConfiguration enableLocalLocking() {
+    this.isLocalLocking = true;
+    return this;
+  }
+
+  /** the stores create the configured indexes when they are initialized, 
+   * this disables that for when indexes are managed separately. */
+  public MongoConfiguration disableIndexCreation() {
+    this.isCreateIndexes = false;
+    return this;
+  }
+
+  /** moves ended activity instances out of the workflow instance's 
+   * activityInstances on flush, which keeps the documents that are locked 
+   * and rewritten small.  Queries don't return the archived activity 
+   * instances, so only enable this when readers don't need ended 
+   * activity instances. */
+  public MongoConfiguration enableActivityInstanceArchiving() {
+    this.isArchiveActivityInstances = true;
+    return this;
+  }
+
+  /** spreads the job processing of a cluster over the engine nodes by 
+   * hashing the workflow instances and jobs into the given number of partitions.  
+   * Each node only locks jobs in the partitions it leased, see {@link MongoJobPartitions}. 
+   * The number of partitions has to be the same on all nodes 
+   * and at least the number of nodes, a multiple of the number of nodes 
+   * spreads the jobs evenly. */
+  public MongoConfiguration jobPartitions(int jobPartitions) {
+    this.jobPartitions = jobPartitions;
+    return this;
+  }
+
+  public MongoConfiguration workflowsIndex(Index index) {
+    this.workflowsIndexes.add(index);
+    return this;
+  }
+
+  public MongoConfiguration workflowInstancesIndex(Index index) {
+    this.workflowInstancesIndexes.add(index);
+    return this;
+  }
+
+  public MongoConfiguration jobsIndex(Index index) {
+    this.jobsIndexes.add(index);
+    return this;
+  }
+
+  /** supports {@link MongoWorkflowStore#findLatestWorkflowIdBySource(String)} */
+  protected static List<Index> createDefaultWorkflowsIndexes() {
+    List<Index> indexes = new ArrayList<>();
+    indexes.add(new Index()
+      .ascending(WorkflowFields.SOURCE_WORKFLOW_ID)
+      .descending(WorkflowFields.CREATE_TIME));
+    return indexes;
+  }
+
+  /** supports {@link MongoWorkflowInstanceStore#lockWorkflowInstanceWithJobsDue()}, 
+   * with and without {@link #jobPartitions(int) job partitions}.
+   * Only workflow instances with jobs are indexed.  Mongo partial indexes 
+   * can't filter on the absence of the lock, so that remains a filter 
+   * on the (few) workflow instances that have jobs due. */
+  protected static List<Index> createDefaultWorkflowInstancesIndexes() {
+    List<Index> indexes = new ArrayList<>();
+    String jobsDueDate = WorkflowInstanceFields.JOBS+"."+JobFields.DUE_DATE;
+    indexes.add(new Index()
+      .ascending(jobsDueDate, ScopeInstanceFields.START)
+      .partialFilter(new BasicDBObject(jobsDueDate, new BasicDBObject("$exists", true))));
+    indexes.add(new Index()
+      .ascending(MongoJobPartitions.PARTITION, jobsDueDate, ScopeInstanceFields.START)
+      .partialFilter(new BasicDBObject(jobsDueDate, new BasicDBObject("$exists", true))));
+    return indexes;
+  }
+
+  /** supports {@link MongoJobStore#lockJobByKey(String)}, the job upserts and 
+   * the due date and partition filters of {@link MongoJobStore#lockNextJob()} */
+  protected static List<Index> createDefaultJobsIndexes() {
+    List<Index> indexes = new ArrayList<>();
+    indexes.add(new Index()
+      .ascending(JobFields.KEY));
+    indexes.add(new Index()
+      .ascending(JobFields.DUE_DATE));
+    indexes.add(new Index()
+      .ascending(MongoJobPartitions.PARTITION, JobFields.DUE_DATE));
+    indexes.add(new Index()
+      .ascending(JobFields.WORKFLOW_INSTANCE_ID)
+      .partialFilter(new BasicDBObject(JobFields.WORKFLOW_INSTANCE_ID, new BasicDBObject("$exists", true))));
+    return indexes;
+  }
+
   @Override
   public MongoConfiguration synchronous() {
     super.synchronous();
@@ -244,6 +350,98 @@ public class MongoConfiguration extends DefaultConfiguration {
     return optionBuilder;
   }
 
+  public boolean isLocalLocking() {
+    return isLocalLocking;
+  }
+
+  public void setLocalLocking(boolean isLocalLocking) {
+    this.isLocalLocking = isLocalLocking;
+  }
+
+  public int getLocalLockStripes() {
+    return localLockStripes;
+  }
+
+  public void setLocalLockStripes(int localLockStripes) {
+    this.localLockStripes = localLockStripes;
+  }
+
+  /** max millis the db lock is kept for a workflow instance that is handed off 
+   * to another lock attempt of this engine before it is unlocked in the db */
+  public long getLocalLockHandoffTimeout() {
+    return localLockHandoffTimeout;
+  }
+
+  public void setLocalLockHandoffTimeout(long localLockHandoffTimeout) {
+    this.localLockHandoffTimeout = localLockHandoffTimeout;
+  }
+
+  public boolean isCreateIndexes() {
+    return isCreateIndexes;
+  }
+
+  public void setCreateIndexes(boolean isCreateIndexes) {
+    this.isCreateIndexes = isCreateIndexes;
+  }
+
+  public boolean isArchiveActivityInstances() {
+    return isArchiveActivityInstances;
+  }
+
+  public void setArchiveActivityInstances(boolean isArchiveActivityInstances) {
+    this.isArchiveActivityInstances = isArchiveActivityInstances;
+  }
+
+  /** number of job partitions, 0 means that all nodes poll all jobs */
+  public int getJobPartitions() {
+    return jobPartitions;
+  }
+
+  public void setJobPartitions(int jobPartitions) {
+    this.jobPartitions = jobPartitions;
+  }
+
+  /** millis after which the partitions of a node that stopped can be leased by other nodes */
+  public long getJobPartitionLeaseTime() {
+    return jobPartitionLeaseTime;
+  }
+
+  public void setJobPartitionLeaseTime(long jobPartitionLeaseTime) {
+    this.jobPartitionLeaseTime = jobPartitionLeaseTime;
+  }
+
+  public String getJobPartitionLeasesCollectionName() {
+    return jobPartitionLeasesCollectionName;
+  }
+
+  public void setJobPartitionLeasesCollectionName(String jobPartitionLeasesCollectionName) {
+    this.jobPartitionLeasesCollectionName = jobPartitionLeasesCollectionName;
+  }
+
+  public List<Index> getWorkflowsIndexes() {
+    return workflowsIndexes;
+  }
+
+  public void setWorkflowsIndexes(List<Index> workflowsIndexes) {
+    this.workflowsIndexes = workflowsIndexes;
+  }
+
+  public List<Index> getWorkflowInstancesIndexes() {
+    return workflowInstancesIndexes;
+  }
+
+  public void setWorkflowInstancesIndexes(List<Index> workflowInstancesIndexes) {
+    this.workflowInstancesIndexes = workflowInstancesIndexes;
+  }
+
+  public List<Index> getJobsIndexes() {
+    return jobsIndexes;
+  }
+
+  public void setJobsIndexes(List<Index> jobsIndexes) {
+    this.jobsIndexes = jobsIndexes;
+  }
+
   @Override
   public MongoConfiguration ingredient(Object ingredient) {
     super.ingredient(ingredient);
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.mongo;
+
+import static com.effektif.mongo.MongoDb._ID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.effektif.workflow.impl.WorkflowEngineImpl;
+import com.effektif.workflow.impl.configuration.Brewable;
+import com.effektif.workflow.impl.configuration.Brewery;
+import com.effektif.workflow.impl.job.JobServiceImpl;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+
+/**
+ * Spreads the job processing over the engine nodes.
+ * 
+ * Jobs and workflow instances get a partition, the hash of the workflow 
+ * instance id (or job key for jobs without workflow instance) modulo 
+ * {@link MongoConfiguration#jobPartitions(int) the number of partitions}.
+ * Each node leases its fair share of the partitions in the lease 
+ * collection and the job stores only lock jobs in the leased partitions.
+ * 
+ * Leases are renewed on the timer of the {@link JobServiceImpl job service} 
+ * and, in case that isn't running, when the job stores ask for the partitions.  
+ * Nodes also write a heartbeat in the lease collection so that the others 
+ * release partitions when a node joins.  Leases and heartbeats of a node 
+ * that stops expire after the lease time and the expired heartbeats are 
+ * removed by the nodes that are still alive.
+ * 
+ * Documents written before partitioning was enabled don't have a partition 
+ * and are still polled by all nodes.
+ */
+public class MongoJobPartitions implements Brewable {
+  
+  private static final Logger log = LoggerFactory.getLogger(MongoJobPartitions.class);
+
+  public static final String PARTITION = "partition";
+  
+  static final String OWNER = "owner";
+  static final String EXPIRES = "expires";
+  static final String NODE = "node";
+
+  protected int partitionCount;
+  protected long leaseTime;
+  protected String owner;
+  protected MongoCollection leasesCollection;
+
+  protected List<Integer> leasedPartitions = null;
+  protected long nextRenewal = 0;
+  protected boolean isLeasesCreated = false;
+
+  @Override
+  public void brew(Brewery brewery) {
+    MongoConfiguration mongoConfiguration = brewery.get(MongoConfiguration.class);
+    this.partitionCount = mongoConfiguration.getJobPartitions();
+    this.leaseTime = mongoConfiguration.getJobPartitionLeaseTime();
+    if (isEnabled()) {
+      MongoDb mongoDb = brewery.get(MongoDb.class);
+      this.leasesCollection = mongoDb.createCollection(mongoConfiguration.getJobPartitionLeasesCollectionName());
+      this.owner = brewery.get(WorkflowEngineImpl.class).getId();
+      JobServiceImpl jobService = brewery.getOpt(JobServiceImpl.class);
+      if (jobService!=null) {
+        jobService.addPeriodicTask(renewLeasesRunnable, getRenewalInterval());
+      }
+    }
+  }
+
+  protected Runnable renewLeasesRunnable = new Runnable() {
+    @Override
+    public void run() {
+      renewLeases();
+    }
+  };
+  
+  public boolean isEnabled() {
+    return partitionCount>0;
+  }
+
+  /** the partition of the given workflow instance id or job key, 
+   * null if partitioning is not enabled */
+  public Integer getPartition(String id) {
+    if (!isEnabled() || id==null) {
+      return null;
+    }
+    return (id.hashCode() & 0x7fffffff) % partitionCount;
+  }
+
+  /** the {@link #PARTITION} criteria for queries that look for jobs to lock. 
+   * Documents without partition match in every node. */
+  public DBObject createLeasedPartitionsCriteria() {
+    List<Integer> partitions = new ArrayList<Integer>(getLeasedPartitions());
+    partitions.add(null);
+    return new BasicDBObject("$in", partitions);
+  }
+
+  /** the partitions leased by this node, renewed when a third of the lease time has passed */
+  public synchronized List<Integer> getLeasedPartitions() {
+    if (leasedPartitions==null || System.currentTimeMillis()>=nextRenewal) {
+      renewLeases();
+    }
+    return leasedPartitions;
+  }
+
+  /** renews the leases of this node and rebalances the partitions over the live nodes */
+  public synchronized void renewLeases() {
+    long now = System.currentTimeMillis();
+    try {
+      leasedPartitions = renewLeases(now);
+    } catch (RuntimeException e) {
+      log.error("Couldn't renew job partition leases: "+e.getMessage(), e);
+      if (leasedPartitions==null) {
+        leasedPartitions = new ArrayList<>();
+      }
+    }
+    nextRenewal = now + getRenewalInterval();
+  }
+
+  protected long getRenewalInterval() {
+    return leaseTime/3;
+  }
+
+  protected List<Integer> renewLeases(long now) {
+    Date nowDate = new Date(now);
+    Date expires = new Date(now+leaseTime);
+    
+    // heartbeat of this node
+    leasesCollection.update("job-partition-heartbeat", 
+      new BasicDBObject(_ID, NODE+"-"+owner), 
+      BasicDBObjectBuilder.start()
+        .append(NODE, true)
+        .append(EXPIRES, expires)
+        .get(), 
+      true, false);
+    // heartbeats of nodes that stopped
+    leasesCollection.remove("remove-expired-job-partition-nodes", BasicDBObjectBuilder.start()
+      .append(NODE, true)
+      .push(EXPIRES).append("$lte", nowDate).pop()
+      .get());
+    int fairShare = getFairShare(findLiveNodes(nowDate));
+
+    List<Integer> owned = findOwnedPartitions(nowDate);
+    if (!owned.isEmpty()) {
+      leasesCollection.update("renew-job-partitions", BasicDBObjectBuilder.start()
+          .push(_ID).append("$in", owned).pop()
+          .append(OWNER, owner)
+          .get(), 
+        new BasicDBObject("$set", new BasicDBObject(EXPIRES, expires)), 
+        false, true);
+    }
+
+    // release the partitions above the fair share so that joining nodes can lease them
+    while (owned.size()>fairShare) {
+      Integer partition = owned.remove(owned.size()-1);
+      leasesCollection.update("release-job-partition", BasicDBObjectBuilder.start()
+          .append(_ID, partition)
+          .append(OWNER, owner)
+          .get(), 
+        new BasicDBObject("$set", new BasicDBObject(EXPIRES, new Date(0))), 
+        false, false);
+    }
+
+    if (owned.size()<fairShare) {
+      ensurePartitionLeases();
+      for (int partition=0; partition<partitionCount && owned.size()<fairShare; partition++) {
+        if (!owned.contains(partition)) {
+          DBObject query = BasicDBObjectBuilder.start()
+            .append(_ID, partition)
+            .push(EXPIRES).append("$lte", nowDate).pop()
+            .get();
+          DBObject update = new BasicDBObject("$set", BasicDBObjectBuilder.start()
+            .append(OWNER, owner)
+            .append(EXPIRES, expires)
+            .get());
+          if (leasesCollection.update("lease-job-partition", query, update, false, false).getN()==1) {
+            owned.add(partition);
+          }
+        }
+      }
+    }
+    
+    log.debug("Node "+owner+" leases job partitions "+owned+" (fair share "+fairShare+" of "+partitionCount+")");
+    return owned;
+  }
+
+  /** every node gets partitionCount/liveNodes partitions and the first 
+   * partitionCount%liveNodes nodes, in the order of their ids, get one more. 
+   * So all nodes lease at least one partition if there are enough partitions. */
+  protected int getFairShare(List<String> liveNodes) {
+    int nodeCount = Math.max(1, liveNodes.size());
+    int rank = liveNodes.indexOf(NODE+"-"+owner);
+    if (rank==-1) {
+      rank = nodeCount-1;
+    }
+    return partitionCount/nodeCount + (rank<partitionCount%nodeCount ? 1 : 0);
+  }
+
+  /** the sorted heartbeat ids of the nodes that are alive */
+  protected List<String> findLiveNodes(Date now) {
+    List<String> liveNodes = new ArrayList<>();
+    DBCursor cursor = leasesCollection.find("find-job-partition-nodes", BasicDBObjectBuilder.start()
+      .append(NODE, true)
+      .push(EXPIRES).append("$gt", now).pop()
+      .get());
+    while (cursor.hasNext()) {
+      liveNodes.add((String) cursor.next().get(_ID));
+    }
+    Collections.sort(liveNodes);
+    return liveNodes;
+  }
+
+  protected List<Integer> findOwnedPartitions(Date now) {
+    List<Integer> owned = new ArrayList<>();
+    DBCursor cursor = leasesCollection.find("find-job-partitions", BasicDBObjectBuilder.start()
+      .append(OWNER, owner)
+      .push(EXPIRES).append("$gt", now).pop()
+      .get());
+    while (cursor.hasNext()) {
+      Object partition = cursor.next().get(_ID);
+      if (partition instanceof Number) {
+        owned.add(((Number)partition).intValue());
+      }
+    }
+    return owned;
+  }
+
+  /** creates the lease documents that don't exist yet as expired leases */
+  protected void ensurePartitionLeases() {
+    if (isLeasesCreated) {
+      return;
+    }
+    List<BasicDBObject> leases = new ArrayList<>();
+    for (int partition=0; partition<partitionCount; partition++) {
+      leases.add(new BasicDBObject(_ID, partition)
+        .append(EXPIRES, new Date(0)));
+    }
+    // duplicate key errors are expected for the leases that already exist
+    leasesCollection.insertAll("create-job-partitions", leases);
+    isLeasesCreated = true;
+  }
+}
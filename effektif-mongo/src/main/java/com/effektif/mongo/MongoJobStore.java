@@ -27,6 +27,7 @@ import com.mongodb.*;
 import org.bson.types.ObjectId;
 
 import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.query.QueryIterator;
 import com.effektif.workflow.impl.configuration.Brewable;
 import com.effektif.workflow.impl.configuration.Brewery;
 import com.effektif.workflow.impl.util.Time;
@@ -39,14 +40,19 @@ public class MongoJobStore implements JobStore, Brewable {
   protected String lockOwner;
   protected MongoCollection jobsCollection;
   protected MongoCollection archivedJobsCollection;
+  protected MongoJobPartitions jobPartitions;
   
   @Override
   public void brew(Brewery brewery) {
     MongoDb mongoDb = brewery.get(MongoDb.class);
     MongoConfiguration mongoConfiguration = brewery.get(MongoConfiguration.class);
     this.jobsCollection = mongoDb.createCollection(mongoConfiguration.getJobsCollectionName());
+    if (mongoConfiguration.isCreateIndexes()) {
+      jobsCollection.ensureIndexes(mongoConfiguration.getJobsIndexes());
+    }
     this.archivedJobsCollection = mongoDb.createCollection(mongoConfiguration.getJobsArchivedCollectionName());
     this.mongoMapper = brewery.get(MongoObjectMapper.class);
+    this.jobPartitions = brewery.get(MongoJobPartitions.class);
 
     WorkflowEngineImpl workflowEngine = brewery.get(WorkflowEngineImpl.class);
     lockOwner = workflowEngine.getId();
@@ -59,7 +65,13 @@ public class MongoJobStore implements JobStore, Brewable {
     }
 
     BasicDBObject dbJob = writeJob(job);
+    if (jobPartitions.isEnabled()) {
+      String partitionKey = job.workflowInstanceId!=null ? job.workflowInstanceId.getInternal() : job.key;
+      dbJob.put(MongoJobPartitions.PARTITION, jobPartitions.getPartition(partitionKey));
+    }
     BasicDBObject query = new BasicDBObject(KEY, dbJob.get(KEY));
+    // the job document is replaced as a whole, which also drops 
+    // the claim token that lockNextJobs may have left on it
     jobsCollection.update("upsert-job", query, dbJob, true, false);
 
   }
@@ -113,20 +125,77 @@ public class MongoJobStore implements JobStore, Brewable {
     return null;
   }
 
+  /** claims the next due jobs with 3 round trips: the ids of the candidates 
+   * are selected, all candidates that are still unlocked are locked and tagged 
+   * with a claim token in a single multi update and then the claimed jobs 
+   * are fetched by their ids and the token, which uses the _id index.  
+   * Candidates locked by another engine in between are not tagged and 
+   * hence not returned. */
+  @Override
+  public List<Job> lockNextJobs(int maxJobs) {
+    List<Job> jobs = new ArrayList<>();
+    DBObject query = buildLockNextJobQuery()
+      .push(WORKFLOW_INSTANCE_ID).append("$exists", false).pop()
+      .get();
+    DBCursor candidates = jobsCollection
+      .find("find-jobs-to-claim", query, new BasicDBObject(_ID, true))
+      .limit(maxJobs);
+    List<Object> candidateIds = new ArrayList<>();
+    while (candidates.hasNext()) {
+      candidateIds.add(candidates.next().get(_ID));
+    }
+    if (candidateIds.isEmpty()) {
+      return jobs;
+    }
+
+    String claim = new ObjectId().toString();
+    DBObject claimQuery = buildLockNextJobQuery()
+      .push(_ID).append("$in", candidateIds).pop()
+      .get();
+    DBObject dbLock = BasicDBObjectBuilder.start()
+      .append(TIME, Time.now().toDate())
+      .append(OWNER, lockOwner)
+      .get();
+    DBObject update = BasicDBObjectBuilder.start()
+      .push("$set")
+        .append(LOCK, dbLock)
+        .append(CLAIM, claim)
+      .pop()
+      .get();
+    jobsCollection.update("claim-jobs", claimQuery, update, false, true);
+
+    DBObject claimedQuery = BasicDBObjectBuilder.start()
+      .push(_ID).append("$in", candidateIds).pop()
+      .append(CLAIM, claim)
+      .get();
+    DBCursor claimedJobs = jobsCollection.find("find-claimed-jobs", claimedQuery);
+    while (claimedJobs.hasNext()) {
+      jobs.add(readJob((BasicDBObject) claimedJobs.next()));
+    }
+    return jobs;
+  }
+
   protected BasicDBObjectBuilder buildLockNextJobQuery() {
     Date now = Time.now().toDate();
-    return BasicDBObjectBuilder.start()
+    BasicDBObjectBuilder query = BasicDBObjectBuilder.start()
       .append("$or", new DBObject[]{
         new BasicDBObject(DUE_DATE, new BasicDBObject("$exists", false)),
         new BasicDBObject(DUE_DATE, new BasicDBObject("$lte", now))
       })
       .push(LOCK).append("$exists", false).pop()
       .push(DONE).append("$exists", false).pop();
+    if (jobPartitions.isEnabled()) {
+      query.append(MongoJobPartitions.PARTITION, jobPartitions.createLeasedPartitionsCriteria());
+    }
+    return query;
   }
 
   public Job readJob(BasicDBObject dbJob) {
     List<BasicDBObject> dbExecutions = (List<BasicDBObject>) dbJob.get(EXECUTIONS);
     dbJob.remove(EXECUTIONS);
+    // the claim token is only used to fetch the jobs claimed in lockNextJobs
+    dbJob.remove(CLAIM);
+    dbJob.remove(MongoJobPartitions.PARTITION);
 
     Job job = mongoMapper.read(dbJob, Job.class);
     if (dbExecutions != null && dbExecutions.size() > 0) readExecutions(job, dbExecutions);
@@ -196,6 +265,20 @@ public class MongoJobStore implements JobStore, Brewable {
     return findJobs(this.jobsCollection, query);
   }
 
+  @Override
+  public QueryIterator<Job> iterateJobs(JobQuery jobQuery) {
+    DBCursor jobCursor = jobsCollection.find("iterate-jobs", createDbQuery(jobQuery));
+    if (jobQuery!=null && jobQuery.getBatchSize()!=null) {
+      jobCursor.batchSize(jobQuery.getBatchSize());
+    }
+    return new MongoQueryIterator<Job>(jobCursor) {
+      @Override
+      protected Job read(BasicDBObject dbJob) {
+        return readJob(dbJob);
+      }
+    };
+  }
+
   protected List<Job> findJobs(MongoCollection collection, JobQuery jobQuery) {
     List<Job> jobs = new ArrayList<Job>();
     BasicDBObject query = createDbQuery(jobQuery);
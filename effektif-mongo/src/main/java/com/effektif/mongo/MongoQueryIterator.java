@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.mongo;
+
+import com.effektif.workflow.api.query.QueryIterator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+
+
+/**
+ * Reads the documents of a cursor one by one so that only 
+ * the current batch of the cursor is kept in memory.
+ */
+public abstract class MongoQueryIterator<T> implements QueryIterator<T> {
+
+  protected DBCursor cursor;
+
+  public MongoQueryIterator(DBCursor cursor) {
+    this.cursor = cursor;
+  }
+
+  protected abstract T read(BasicDBObject dbObject);
+
+  @Override
+  public boolean hasNext() {
+    return cursor.hasNext();
+  }
+
+  @Override
+  public T next() {
+    return read((BasicDBObject) cursor.next());
+  }
+
+  @Override
+  public void close() {
+    cursor.close();
+  }
+}
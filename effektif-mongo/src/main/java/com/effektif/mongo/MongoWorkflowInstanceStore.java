@@ -22,6 +22,7 @@ import static com.effektif.mongo.WorkflowInstanceFields.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -37,8 +38,13 @@ import com.effektif.mongo.WorkflowInstanceFields.Lock;
 import com.effektif.workflow.api.Configuration;
 import com.effektif.workflow.api.model.WorkflowId;
 import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.query.OrderBy;
+import com.effektif.workflow.api.query.OrderDirection;
+import com.effektif.workflow.api.query.QueryIterator;
 import com.effektif.workflow.api.query.WorkflowInstanceQuery;
 import com.effektif.workflow.api.types.DataType;
+import com.effektif.workflow.api.workflowinstance.ActivityInstance;
+import com.effektif.workflow.api.workflowinstance.ScopeInstance;
 import com.effektif.workflow.api.workflowinstance.VariableInstance;
 import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
 import com.effektif.workflow.impl.WorkflowEngineImpl;
@@ -48,6 +54,7 @@ import com.effektif.workflow.impl.configuration.Brewery;
 import com.effektif.workflow.impl.data.DataTypeService;
 import com.effektif.workflow.impl.job.Job;
 import com.effektif.workflow.impl.job.JobService;
+import com.effektif.workflow.impl.job.JobServiceImpl;
 import com.effektif.workflow.impl.util.Exceptions;
 import com.effektif.workflow.impl.util.Time;
 import com.effektif.workflow.impl.workflow.ActivityImpl;
@@ -55,14 +62,17 @@ import com.effektif.workflow.impl.workflow.ScopeImpl;
 import com.effektif.workflow.impl.workflow.VariableImpl;
 import com.effektif.workflow.impl.workflow.WorkflowImpl;
 import com.effektif.workflow.impl.workflowinstance.ActivityInstanceImpl;
+import com.effektif.workflow.impl.workflowinstance.ActivityInstanceUpdates;
 import com.effektif.workflow.impl.workflowinstance.LockImpl;
 import com.effektif.workflow.impl.workflowinstance.ScopeInstanceImpl;
 import com.effektif.workflow.impl.workflowinstance.VariableInstanceImpl;
+import com.effektif.workflow.impl.workflowinstance.VariableInstanceUpdates;
 import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
 import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceUpdates;
 import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.BulkWriteError;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 
@@ -75,9 +85,13 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
   protected WorkflowEngineImpl workflowEngine;
   protected MongoCollection workflowInstancesCollection;
   protected MongoJobStore mongoJobsStore;
+  protected MongoJobPartitions jobPartitions;
   protected boolean storeWorkflowIdsAsStrings;
   protected DataTypeService dataTypeService;
   protected MongoObjectMapper mongoMapper;
+  /** null if local locking is disabled */
+  protected LocalLockTable<BasicDBObject> localLocks;
+  protected boolean isArchiveActivityInstances;
   
   @Override
   public void brew(Brewery brewery) {
@@ -86,11 +100,31 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
     this.configuration = brewery.get(MongoConfiguration.class);
     this.workflowEngine = brewery.get(WorkflowEngineImpl.class);
     this.workflowInstancesCollection = mongoDb.createCollection(mongoConfiguration.workflowInstancesCollectionName);
+    if (mongoConfiguration.isCreateIndexes()) {
+      workflowInstancesCollection.ensureIndexes(mongoConfiguration.getWorkflowInstancesIndexes());
+    }
     this.storeWorkflowIdsAsStrings = mongoConfiguration.getStoreWorkflowIdsAsString();
     this.mongoJobsStore = brewery.get(MongoJobStore.class);
+    this.jobPartitions = brewery.get(MongoJobPartitions.class);
     this.dataTypeService = brewery.get(DataTypeService.class);
     this.mongoMapper = brewery.get(MongoObjectMapper.class);
+    this.isArchiveActivityInstances = mongoConfiguration.isArchiveActivityInstances();
+    if (mongoConfiguration.isLocalLocking()) {
+      this.localLocks = new LocalLockTable<>(mongoConfiguration.getLocalLockStripes(), mongoConfiguration.getLocalLockHandoffTimeout());
+      // the store operations only release expired handoffs while the engine is busy
+      JobServiceImpl jobService = brewery.getOpt(JobServiceImpl.class);
+      if (jobService!=null) {
+        jobService.addPeriodicTask(unlockExpiredHandoffsRunnable, mongoConfiguration.getLocalLockHandoffTimeout());
+      }
+    }
   }
+
+  protected Runnable unlockExpiredHandoffsRunnable = new Runnable() {
+    @Override
+    public void run() {
+      unlockExpiredHandoffs();
+    }
+  };
   
   @Override
   public WorkflowInstanceId generateWorkflowInstanceId() {
@@ -101,9 +135,35 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
   public void insertWorkflowInstance(WorkflowInstanceImpl workflowInstance) {
     BasicDBObject dbWorkflowInstance = writeWorkflowInstance(workflowInstance);
     workflowInstancesCollection.insert("insert-workflow-instance", dbWorkflowInstance);
+    if (localLocks!=null && workflowInstance.lock!=null) {
+      localLocks.register(workflowInstance.id);
+    }
     workflowInstance.trackUpdates(false);
   }
 
+  @Override
+  public Map<Integer, String> insertWorkflowInstances(List<WorkflowInstanceImpl> workflowInstances) {
+    List<BasicDBObject> dbWorkflowInstances = new ArrayList<>(workflowInstances.size());
+    for (WorkflowInstanceImpl workflowInstance: workflowInstances) {
+      dbWorkflowInstances.add(writeWorkflowInstance(workflowInstance));
+    }
+    List<BulkWriteError> writeErrors = workflowInstancesCollection.insertAll("insert-workflow-instances", dbWorkflowInstances);
+    Map<Integer, String> insertErrors = new HashMap<>();
+    for (BulkWriteError writeError: writeErrors) {
+      insertErrors.put(writeError.getIndex(), writeError.getMessage());
+    }
+    for (int i=0; i<workflowInstances.size(); i++) {
+      WorkflowInstanceImpl workflowInstance = workflowInstances.get(i);
+      if (!insertErrors.containsKey(i)) {
+        if (localLocks!=null && workflowInstance.lock!=null) {
+          localLocks.register(workflowInstance.id);
+        }
+        workflowInstance.trackUpdates(false);
+      }
+    }
+    return insertErrors;
+  }
+
   @Override
   public void flush(WorkflowInstanceImpl workflowInstance) {
 //    if (log.isDebugEnabled()) log.debug("Flushing workflow instance...");
@@ -137,17 +197,23 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
 
 
     // MongoDB can't combine updates of array elements together with 
-    // adding elements to that array.  That's why we overwrite the whole
-    // activity instance array when an update happened in there.
-    // We do archive the ended (and joined) activity instances into a separate collection 
+    // adding or removing elements of that array.  That's why modified activity 
+    // instances are $set by position and removals and additions are done in 
+    // follow up updates.  When most of the array changed, it's overwritten as a whole.
+    // We do archive the ended (and joined) activity instances into a separate field 
     // that doesn't have to be loaded.
+    BasicDBObject pushes = new BasicDBObject();
+    List<DBObject> followUpUpdates = new ArrayList<>();
     if (updates.isActivityInstancesChanged) {
-      BasicDBList dbActivityInstances = writeActiveActivityInstances(workflowInstance.activityInstances);
-      sets.append(ACTIVITY_INSTANCES, dbActivityInstances);
+      BasicDBList dbArchivedActivityInstances = isArchiveActivityInstances ? new BasicDBList() : null;
+      writeActivityInstanceUpdates(sets, pushes, followUpUpdates, workflowInstance, dbArchivedActivityInstances);
+      if (dbArchivedActivityInstances!=null && !dbArchivedActivityInstances.isEmpty()) {
+        pushes.append(ARCHIVED_ACTIVITY_INSTANCES, new BasicDBObject("$each", dbArchivedActivityInstances));
+      }
     }
     
     if (updates.isVariableInstancesChanged) {
-      writeVariableInstances(sets, workflowInstance);
+      writeVariableInstanceUpdates(sets, workflowInstance);
     }
 
     if (updates.isWorkChanged) {
@@ -177,8 +243,12 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
     }
 
     if (updates.isLockChanged) {
-      // a lock is only removed 
-      unsets.put(LOCK, 1);
+      // a lock is removed or refreshed when it's handed off
+      if (workflowInstance.lock!=null) {
+        sets.put(LOCK, writeLock(workflowInstance.lock));
+      } else {
+        unsets.put(LOCK, 1);
+      }
     }
     
     if (updates.isJobsChanged) {
@@ -203,7 +273,18 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
     if (!unsets.isEmpty()) {
       update.append("$unset", unsets);
     }
-    if (!update.isEmpty()) {
+    if (!pushes.isEmpty()) {
+      update.append("$push", pushes);
+    }
+    if (!followUpUpdates.isEmpty()) {
+      log.debug("--> workflowInstance flush, $oid: " + workflowInstance.getId().getInternal());
+      List<DBObject> dbUpdates = new ArrayList<>();
+      if (!update.isEmpty()) {
+        dbUpdates.add(update);
+      }
+      dbUpdates.addAll(followUpUpdates);
+      workflowInstancesCollection.updateAll("flush-workflow-instance", query, dbUpdates);
+    } else if (!update.isEmpty()) {
       log.debug("--> workflowInstance flush, $oid: " + workflowInstance.getId().getInternal());     //jb
       workflowInstancesCollection.update("flush-workflow-instance", query, update, false, false);
     }
@@ -214,9 +295,32 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
 
   @Override
   public void flushAndUnlock(WorkflowInstanceImpl workflowInstance) {
-    workflowInstance.removeLock();
-    flush(workflowInstance);
+    if (localLocks!=null && localLocks.release(workflowInstance.id)) {
+      // a lock attempt of this engine is queued for the lock so we keep the db lock 
+      // and pass a snapshot of the flushed workflow instance on to the next holder
+      workflowInstance.setLock(createLock());
+      flush(workflowInstance);
+      BasicDBObject snapshot = null;
+      try {
+        snapshot = writeWorkflowInstance(workflowInstance);
+        if (isArchiveActivityInstances) {
+          // the flush has archived the ended activity instances, the next owner mustn't write them again
+          BasicDBList dbActivityInstances = writeActiveActivityInstances(workflowInstance.activityInstances, null);
+          if (dbActivityInstances!=null) {
+            snapshot.put(ACTIVITY_INSTANCES, dbActivityInstances);
+          } else {
+            snapshot.remove(ACTIVITY_INSTANCES);
+          }
+        }
+      } finally {
+        localLocks.handOff(workflowInstance.id, snapshot);
+      }
+    } else {
+      workflowInstance.removeLock();
+      flush(workflowInstance);
+    }
     workflowInstance.notifyUnlockListeners();
+    unlockExpiredHandoffs();
   }
 
   @Override
@@ -236,6 +340,76 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
     return workflowInstances;
   }
   
+  @Override
+  public List<WorkflowInstance> findWorkflowInstanceSummaries(WorkflowInstanceQuery query) {
+    DBCursor workflowInstanceCursor = createWorkflowInstanceCursor("find-workflow-instance-summaries", query);
+    List<WorkflowInstance> workflowInstances = new ArrayList<>();
+    while (workflowInstanceCursor.hasNext()) {
+      BasicDBObject dbWorkflowInstance = (BasicDBObject) workflowInstanceCursor.next();
+      workflowInstances.add(readWorkflowInstanceSummary(dbWorkflowInstance));
+    }
+    return workflowInstances;
+  }
+
+  @Override
+  public QueryIterator<WorkflowInstance> iterateWorkflowInstances(WorkflowInstanceQuery query) {
+    final boolean isSummary = query.getFields()!=null;
+    DBCursor workflowInstanceCursor = createWorkflowInstanceCursor("iterate-workflow-instances", query);
+    return new MongoQueryIterator<WorkflowInstance>(workflowInstanceCursor) {
+      @Override
+      protected WorkflowInstance read(BasicDBObject dbWorkflowInstance) {
+        if (isSummary) {
+          return readWorkflowInstanceSummary(dbWorkflowInstance);
+        }
+        return readWorkflowInstanceImpl(dbWorkflowInstance).toWorkflowInstance();
+      }
+    };
+  }
+
+  /** applies the projection, skip, limit, order and batch size of the query on the server side */
+  protected DBCursor createWorkflowInstanceCursor(String description, WorkflowInstanceQuery query) {
+    BasicDBObject dbQuery = createDbQuery(query);
+    Fields fields = new Fields();
+    if (query.getFields()!=null) {
+      for (String field: query.getFields()) {
+        fields.include(getDbField(field));
+      }
+    } else {
+      fields.exclude(ARCHIVED_ACTIVITY_INSTANCES);
+    }
+    DBCursor workflowInstanceCursor = workflowInstancesCollection.find(description, dbQuery, fields.get());
+    if (query.getSkip()!=null) {
+      workflowInstanceCursor.skip(query.getSkip());
+    }
+    if (query.getLimit()!=null) {
+      workflowInstanceCursor.limit(query.getLimit());
+    }
+    if (query.getOrderBy()!=null) {
+      workflowInstanceCursor.sort(writeOrderBy(query.getOrderBy()));
+    }
+    if (query.getBatchSize()!=null) {
+      workflowInstanceCursor.batchSize(query.getBatchSize());
+    }
+    return workflowInstanceCursor;
+  }
+
+  protected DBObject writeOrderBy(List<OrderBy> orderBy) {
+    BasicDBObject dbOrderBy = new BasicDBObject();
+    for (OrderBy element: orderBy) {
+      int dbDirection = (element.getDirection()==OrderDirection.asc ? 1 : -1);
+      dbOrderBy.append(getDbField(element.getField()), dbDirection);
+    }
+    return dbOrderBy;
+  }
+
+  /** apart from the id, the workflow instance query fields have the same name in the db */
+  protected String getDbField(String field) {
+    if (WorkflowInstanceQuery.FIELD_ID.equals(field)) {
+      return _ID;
+    }
+    return field;
+  }
+
   @Override
   public void deleteWorkflowInstances(WorkflowInstanceQuery workflowInstanceQuery) {
     BasicDBObject query = createDbQuery(workflowInstanceQuery);
@@ -288,7 +462,40 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
   @Override
   public WorkflowInstanceImpl lockWorkflowInstance(WorkflowInstanceId workflowInstanceId) {
     Exceptions.checkNotNullParameter(workflowInstanceId, "workflowInstanceId");
+    if (localLocks==null) {
+      return lockWorkflowInstanceInDb(workflowInstanceId);
+    }
+
+    unlockExpiredHandoffs();
+    LocalLockTable.Grant<BasicDBObject> grant = localLocks.acquire(workflowInstanceId);
+    if (grant==null) {
+      // locked by this engine, the caller retries when it's unlocked
+      return null;
+    }
+    if (grant.isHandoff()) {
+      BasicDBObject dbWorkflowInstance = grant.getHandoff();
+      if (dbWorkflowInstance==null) {
+        dbWorkflowInstance = workflowInstancesCollection.findOne("get-handed-off-workflow-instance", 
+          new Query()._id(new ObjectId(workflowInstanceId.getInternal())).get(), 
+          new BasicDBObject(ARCHIVED_ACTIVITY_INSTANCES, false));
+      }
+      WorkflowInstanceImpl workflowInstance = readWorkflowInstanceImpl(dbWorkflowInstance);
+      workflowInstance.trackUpdates(false);
+      return workflowInstance;
+    }
 
+    WorkflowInstanceImpl workflowInstance = null;
+    try {
+      workflowInstance = lockWorkflowInstanceInDb(workflowInstanceId);
+    } finally {
+      if (workflowInstance==null) {
+        localLocks.dbLockFailed(workflowInstanceId);
+      }
+    }
+    return workflowInstance;
+  }
+
+  protected WorkflowInstanceImpl lockWorkflowInstanceInDb(WorkflowInstanceId workflowInstanceId) {
     DBObject query = createLockQuery();
     query.put(_ID, new ObjectId(workflowInstanceId.getInternal()));
     
@@ -309,20 +516,57 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
   
   @Override
   public void unlockWorkflowInstance(WorkflowInstanceImpl workflowInstance) {
-    if (workflowInstance!=null) {
-      ObjectId workflowInstanceId = new ObjectId(workflowInstance.id.getInternal());
-      // @formatter:off
-      workflowInstancesCollection.update("unlock-workflow-instance", 
-        new Query()
-          ._id(workflowInstanceId)
-          .get(), 
-        new Update()
-          .unset(LOCK)
-          .get());
-      // @formatter:off
-      
+    if (workflowInstance!=null && localLocks!=null && localLocks.release(workflowInstance.id)) {
+      // the in-memory workflow instance may contain updates that are discarded 
+      // by the unlock so the next holder has to reload the workflow instance
+      try {
+        refreshLockInDb(workflowInstance.id);
+      } finally {
+        localLocks.handOff(workflowInstance.id, null);
+      }
+      workflowInstance.notifyUnlockListeners();
+    } else if (workflowInstance!=null) {
+      unlockWorkflowInstanceInDb(workflowInstance.id);
       workflowInstance.notifyUnlockListeners();
     }
+    unlockExpiredHandoffs();
+  }
+
+  protected void unlockWorkflowInstanceInDb(WorkflowInstanceId workflowInstanceId) {
+    // @formatter:off
+    workflowInstancesCollection.update("unlock-workflow-instance", 
+      new Query()
+        ._id(new ObjectId(workflowInstanceId.getInternal()))
+        .get(), 
+      new Update()
+        .unset(LOCK)
+        .get());
+    // @formatter:off
+  }
+
+  /** updates the lock time of a lock that is handed off */
+  protected void refreshLockInDb(WorkflowInstanceId workflowInstanceId) {
+    workflowInstancesCollection.update("refresh-workflow-instance-lock", 
+      new Query()
+        ._id(new ObjectId(workflowInstanceId.getInternal()))
+        .get(), 
+      new BasicDBObject("$set", new BasicDBObject(LOCK, writeLock(createLock()))));
+  }
+
+  @Override
+  public void waitingForLocalUnlock(WorkflowInstanceId workflowInstanceId) {
+    if (localLocks!=null) {
+      localLocks.waiting(workflowInstanceId);
+    }
+  }
+
+  /** releases the db locks that were handed off to a lock attempt that didn't come back */
+  protected void unlockExpiredHandoffs() {
+    if (localLocks!=null) {
+      for (WorkflowInstanceId workflowInstanceId: localLocks.removeExpiredHandoffs()) {
+        unlockWorkflowInstanceInDb(workflowInstanceId);
+      }
+    }
   }
 
   public DBObject createLockQuery() {
@@ -333,6 +577,13 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
       .get();
   }
 
+  protected LockImpl createLock() {
+    LockImpl lock = new LockImpl();
+    lock.setTime(Time.now());
+    lock.setOwner(workflowEngine.getId());
+    return lock;
+  }
+
   public DBObject createLockUpdate() {
     return BasicDBObjectBuilder.start()
       .push("$set")
@@ -346,10 +597,15 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
 
   @Override
   public WorkflowInstanceImpl lockWorkflowInstanceWithJobsDue() {
+    // this is polled regularly, so handoffs also expire when the engine is idle 
+    unlockExpiredHandoffs();
 
     DBObject query = createLockQuery();
     query.put(JobFields.DONE, new BasicDBObject("$exists", false));
     query.put(JOBS + "." + JobFields.DUE_DATE, new BasicDBObject("$lte", Time.now().toDate()));
+    if (jobPartitions.isEnabled()) {
+      query.put(MongoJobPartitions.PARTITION, jobPartitions.createLeasedPartitionsCriteria());
+    }
 
     DBObject update = createLockUpdate();
 
@@ -365,14 +621,28 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
 
     WorkflowInstanceImpl workflowInstance = readWorkflowInstanceImpl(dbWorkflowInstance);
     workflowInstance.trackUpdates(false);
+    if (localLocks!=null) {
+      localLocks.register(workflowInstance.id);
+    }
     return workflowInstance;
   }
 
+  /** writes the runtime tree straight to the db format, without the intermediate 
+   * api model objects and reflective mapping.  Only the variable values 
+   * are written with the {@link MongoObjectMapper}, as their format depends on the type. */
   public BasicDBObject writeWorkflowInstance(WorkflowInstanceImpl workflowInstance) {
-    BasicDBObject dbWorkflowInstance = mongoMapper.write(workflowInstance.toWorkflowInstance(true));
+    BasicDBObject dbWorkflowInstance = new BasicDBObject();
+    writeIdOptNew(dbWorkflowInstance, _ID, workflowInstance.id);
     if (storeWorkflowIdsAsStrings) {
       writeString(dbWorkflowInstance, WORKFLOW_ID, workflowInstance.workflow.id.getInternal());
+    } else {
+      writeIdOptNew(dbWorkflowInstance, WORKFLOW_ID, workflowInstance.workflow.id);
     }
+    writeStringOpt(dbWorkflowInstance, BUSINESS_KEY, workflowInstance.businessKey);
+    writeIdOptNew(dbWorkflowInstance, CALLER_WORKFLOW_INSTANCE_ID, workflowInstance.callerWorkflowInstanceId);
+    writeStringOpt(dbWorkflowInstance, CALLER_ACTIVITY_INSTANCE_ID, workflowInstance.callerActivityInstanceId);
+    writeScopeInstance(dbWorkflowInstance, workflowInstance);
+    writeObjectOpt(dbWorkflowInstance, ACTIVITY_INSTANCES, writeActivityInstances(workflowInstance.activityInstances));
 
     writeLongOpt(dbWorkflowInstance, NEXT_ACTIVITY_INSTANCE_ID, workflowInstance.nextActivityInstanceId);
     writeLongOpt(dbWorkflowInstance, NEXT_VARIABLE_INSTANCE_ID, workflowInstance.nextVariableInstanceId);
@@ -380,6 +650,9 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
     writeObjectOpt(dbWorkflowInstance, WORK_ASYNC, writeWork(workflowInstance.workAsync));
     writeObjectOpt(dbWorkflowInstance, JOBS, writeJobs(workflowInstance.jobs));
     writeObjectOpt(dbWorkflowInstance, LOCK, writeLock(workflowInstance.lock));
+    if (jobPartitions!=null && jobPartitions.isEnabled() && workflowInstance.id!=null) {
+      writeObjectOpt(dbWorkflowInstance, MongoJobPartitions.PARTITION, jobPartitions.getPartition(workflowInstance.id.getInternal()));
+    }
     
     return dbWorkflowInstance;
   }
@@ -399,6 +672,51 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
     return mongoMapper.read(dbWorkflowInstance, WorkflowInstance.class);
   }
 
+  /** maps the (projected) db workflow instance straight to the api object, 
+   * without resolving the workflow or building the {@link WorkflowInstanceImpl}. */
+  public WorkflowInstance readWorkflowInstanceSummary(BasicDBObject dbWorkflowInstance) {
+    WorkflowInstance workflowInstance = new WorkflowInstance();
+    workflowInstance.setId(readWorkflowInstanceId(dbWorkflowInstance, _ID));
+    workflowInstance.setWorkflowId(readWorkflowId(dbWorkflowInstance, WORKFLOW_ID));
+    workflowInstance.setBusinessKey(readString(dbWorkflowInstance, BUSINESS_KEY));
+    workflowInstance.setCallerWorkflowInstanceId(readWorkflowInstanceId(dbWorkflowInstance, CALLER_WORKFLOW_INSTANCE_ID));
+    workflowInstance.setCallerActivityInstanceId(readString(dbWorkflowInstance, CALLER_ACTIVITY_INSTANCE_ID));
+    readScopeInstanceSummary(workflowInstance, dbWorkflowInstance);
+    return workflowInstance;
+  }
+
+  protected void readScopeInstanceSummary(ScopeInstance scopeInstance, BasicDBObject dbScopeInstance) {
+    scopeInstance.setStart(readTime(dbScopeInstance, START));
+    scopeInstance.setEnd(readTime(dbScopeInstance, END));
+    scopeInstance.setDuration(readLong(dbScopeInstance, DURATION));
+    scopeInstance.setEndState(readString(dbScopeInstance, END_STATE));
+    List<BasicDBObject> dbActivityInstances = readList(dbScopeInstance, ACTIVITY_INSTANCES);
+    if (dbActivityInstances!=null && !dbActivityInstances.isEmpty()) {
+      List<ActivityInstance> activityInstances = new ArrayList<>(dbActivityInstances.size());
+      for (BasicDBObject dbActivityInstance: dbActivityInstances) {
+        ActivityInstance activityInstance = new ActivityInstance();
+        activityInstance.setId(readId(dbActivityInstance, ID));
+        activityInstance.setActivityId(readString(dbActivityInstance, ACTIVITY_ID));
+        activityInstance.setCalledWorkflowInstanceId(readWorkflowInstanceId(dbActivityInstance, CALLED_WORKFLOW_INSTANCE_ID));
+        readScopeInstanceSummary(activityInstance, dbActivityInstance);
+        activityInstances.add(activityInstance);
+      }
+      scopeInstance.setActivityInstances(activityInstances);
+    }
+    List<BasicDBObject> dbVariableInstances = readList(dbScopeInstance, VARIABLE_INSTANCES);
+    if (dbVariableInstances!=null && !dbVariableInstances.isEmpty()) {
+      List<VariableInstance> variableInstances = new ArrayList<>(dbVariableInstances.size());
+      for (BasicDBObject dbVariableInstance: dbVariableInstances) {
+        variableInstances.add(mongoMapper.read(dbVariableInstance, VariableInstance.class));
+      }
+      scopeInstance.setVariableInstances(variableInstances);
+    }
+    Map<String,Object> properties = readObjectMap(dbScopeInstance, PROPERTIES);
+    if (properties!=null) {
+      scopeInstance.setProperties(new HashMap<>(properties));
+    }
+  }
+
   public WorkflowInstanceImpl readWorkflowInstanceImpl(BasicDBObject dbWorkflowInstance) {
     if (dbWorkflowInstance==null) {
       return null;
@@ -569,60 +887,275 @@ public class MongoWorkflowInstanceStore implements WorkflowInstanceStore, Brewab
     return lock;
   }
 
-  /** writes the given activityInstances to db format, preserving the hierarchy and including the workState. */
-  protected BasicDBList writeActiveActivityInstances(List<ActivityInstanceImpl> activityInstances) {
+  /** adds the $sets, $pushes and follow up updates for the changed top level activity instances. 
+   * Positions refer to the activityInstances array as it was written by the previous flush:
+   * the activity instances that were neither new nor archived before. */
+  protected void writeActivityInstanceUpdates(BasicDBObject sets, BasicDBObject pushes, List<DBObject> followUpUpdates, 
+          WorkflowInstanceImpl workflowInstance, BasicDBList dbArchivedActivityInstances) {
+    List<ActivityInstanceImpl> activityInstances = workflowInstance.activityInstances;
+    Map<Integer,ActivityInstanceImpl> modifiedActivityInstances = new LinkedHashMap<>();
+    List<ActivityInstanceImpl> removedActivityInstances = new ArrayList<>();
+    List<ActivityInstanceImpl> newActivityInstances = new ArrayList<>();
+    boolean isFullRewrite = (activityInstances==null);
+    int position = 0;
+    if (activityInstances!=null) {
+      for (ActivityInstanceImpl activityInstance: activityInstances) {
+        if (activityInstance.isArchived) {
+          continue;
+        }
+        ActivityInstanceUpdates activityInstanceUpdates = activityInstance.getUpdates();
+        if (activityInstanceUpdates==null) {
+          // unknown if this one is already in the db 
+          isFullRewrite = true;
+          break;
+        }
+        boolean isArchivable = dbArchivedActivityInstances!=null && isArchivable(activityInstance);
+        if (activityInstanceUpdates.isNew) {
+          if (!isArchivable) {
+            newActivityInstances.add(activityInstance);
+          }
+        } else {
+          if (isArchivable) {
+            removedActivityInstances.add(activityInstance);
+          } else if (isChanged(activityInstance)) {
+            modifiedActivityInstances.put(position, activityInstance);
+          }
+          position++;
+        }
+      }
+    }
+    
+    // the activity instances were flagged as changed, but no element tracks what changed.
+    // rewriting the whole array is the only way not to lose that change.
+    if (modifiedActivityInstances.isEmpty() && removedActivityInstances.isEmpty() && newActivityInstances.isEmpty()) {
+      isFullRewrite = true;
+    }
+    
+    // when (nearly) all remaining elements have to be written anyway, overwriting the array is simpler
+    int remaining = position - removedActivityInstances.size() + newActivityInstances.size();
+    if (isFullRewrite || modifiedActivityInstances.size()+newActivityInstances.size()>=remaining) {
+      sets.append(ACTIVITY_INSTANCES, writeActiveActivityInstances(activityInstances, dbArchivedActivityInstances));
+      return;
+    }
+    
+    for (Integer modifiedPosition: modifiedActivityInstances.keySet()) {
+      ActivityInstanceImpl activityInstance = modifiedActivityInstances.get(modifiedPosition);
+      sets.append(ACTIVITY_INSTANCES+"."+modifiedPosition, writeActiveActivityInstance(activityInstance, dbArchivedActivityInstances));
+    }
+    if (dbArchivedActivityInstances!=null) {
+      for (ActivityInstanceImpl activityInstance: activityInstances) {
+        if (!activityInstance.isArchived && isArchivable(activityInstance)) {
+          collectArchivedActivities(activityInstance, dbArchivedActivityInstances);
+        }
+      }
+    }
+    if (!removedActivityInstances.isEmpty()) {
+      BasicDBList removedIds = new BasicDBList();
+      for (ActivityInstanceImpl activityInstance: removedActivityInstances) {
+        removedIds.add(activityInstance.id);
+      }
+      followUpUpdates.add(new BasicDBObject("$pull", new BasicDBObject(ACTIVITY_INSTANCES, 
+              new BasicDBObject(ID, new BasicDBObject("$in", removedIds)))));
+    }
+    if (!newActivityInstances.isEmpty()) {
+      BasicDBList dbNewActivityInstances = new BasicDBList();
+      for (ActivityInstanceImpl activityInstance: newActivityInstances) {
+        dbNewActivityInstances.add(writeActiveActivityInstance(activityInstance, dbArchivedActivityInstances));
+      }
+      BasicDBObject dbEach = new BasicDBObject("$each", dbNewActivityInstances);
+      if (modifiedActivityInstances.isEmpty()) {
+        // the order of $pull and $push doesn't matter as they touch different elements
+        pushes.append(ACTIVITY_INSTANCES, dbEach);
+      } else {
+        followUpUpdates.add(new BasicDBObject("$push", new BasicDBObject(ACTIVITY_INSTANCES, dbEach)));
+      }
+    }
+  }
+
+  /** true if the activity instance or any of its nested activity or variable instances changed */
+  protected boolean isChanged(ActivityInstanceImpl activityInstance) {
+    ActivityInstanceUpdates activityInstanceUpdates = activityInstance.getUpdates();
+    if (activityInstanceUpdates==null || activityInstanceUpdates.isChanged()) {
+      return true;
+    }
+    if (activityInstance.variableInstances!=null) {
+      for (VariableInstanceImpl variableInstance: activityInstance.variableInstances) {
+        VariableInstanceUpdates variableUpdates = variableInstance.getUpdates();
+        if (variableUpdates==null || variableUpdates.isNew || variableUpdates.isValueChanged) {
+          return true;
+        }
+      }
+    }
+    if (activityInstance.activityInstances!=null) {
+      for (ActivityInstanceImpl nestedActivityInstance: activityInstance.activityInstances) {
+        if (!nestedActivityInstance.isArchived && isChanged(nestedActivityInstance)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** writes the given activityInstances to db format, preserving the hierarchy and including the workState.
+   * Activity instances that already have been archived are skipped.  If dbArchivedActivityInstances 
+   * is not null, ended activity instances are left out as well and added to it as a flat list. */
+  protected BasicDBList writeActiveActivityInstances(List<ActivityInstanceImpl> activityInstances, BasicDBList dbArchivedActivityInstances) {
+    if (activityInstances==null || activityInstances.isEmpty()) {
+      return null;
+    }
+    BasicDBList dbActivityInstances = new BasicDBList();
+    for (ActivityInstanceImpl activityInstance: activityInstances) {
+      if (activityInstance.isArchived) {
+        continue;
+      }
+      if (dbArchivedActivityInstances!=null && isArchivable(activityInstance)) {
+        collectArchivedActivities(activityInstance, dbArchivedActivityInstances);
+        continue;
+      }
+      dbActivityInstances.add(writeActiveActivityInstance(activityInstance, dbArchivedActivityInstances));
+    }
+    return dbActivityInstances.isEmpty() ? null : dbActivityInstances;
+  }
+
+  protected BasicDBObject writeActiveActivityInstance(ActivityInstanceImpl activityInstance, BasicDBList dbArchivedActivityInstances) {
+    BasicDBObject dbActivityInstance = writeActivityInstance(activityInstance, true);
+    writeObjectOpt(dbActivityInstance, ACTIVITY_INSTANCES, writeActiveActivityInstances(activityInstance.activityInstances, dbArchivedActivityInstances));
+    return dbActivityInstance;
+  }
+
+  /** writes all the given activity instances and their nested activity instances, including the workState */
+  protected BasicDBList writeActivityInstances(List<ActivityInstanceImpl> activityInstances) {
     if (activityInstances==null || activityInstances.isEmpty()) {
       return null;
     }
     BasicDBList dbActivityInstances = new BasicDBList();
     for (ActivityInstanceImpl activityInstance: activityInstances) {
-      BasicDBObject dbActivityInstance = mongoMapper.write(activityInstance.toActivityInstance(true));
+      BasicDBObject dbActivityInstance = writeActivityInstance(activityInstance, true);
+      writeObjectOpt(dbActivityInstance, ACTIVITY_INSTANCES, writeActivityInstances(activityInstance.activityInstances));
       dbActivityInstances.add(dbActivityInstance);
     }
     return dbActivityInstances;
   }
 
-  /** recursively removes the archivable activities from the scopeInstance, serializes them to DB format and adds them to the dbArchivedActivityInstances as a flat list */
-  protected void collectArchivedActivities(ScopeInstanceImpl scopeInstance, BasicDBList dbArchivedActivityInstances) {
-    if (scopeInstance.activityInstances!=null) {
-      List<ActivityInstanceImpl> activeActivityInstances = new ArrayList<>(); 
-      for (ActivityInstanceImpl activityInstance: scopeInstance.activityInstances) {
-        if (activityInstance.workState!=null) { // null means ready to be archived
-          activeActivityInstances.add(activityInstance);
-        } else {
-          activityInstance.activityInstances = null;
-          BasicDBObject dbActivity = mongoMapper.write(activityInstance.toActivityInstance());
-          String parentId = (activityInstance.parent.isWorkflowInstance() ? null : ((ActivityInstanceImpl) activityInstance.parent).id);
-          writeString(dbActivity, PARENT, parentId);
-          dbArchivedActivityInstances.add(dbActivity);
+  /** writes the fields of a single activity instance, the caller takes care of the nested activity instances */
+  protected BasicDBObject writeActivityInstance(ActivityInstanceImpl activityInstance, boolean includeWorkState) {
+    BasicDBObject dbActivityInstance = new BasicDBObject();
+    writeStringOpt(dbActivityInstance, ID, activityInstance.id);
+    writeStringOpt(dbActivityInstance, ACTIVITY_ID, activityInstance.activity!=null ? activityInstance.activity.id : null);
+    writeIdOptNew(dbActivityInstance, CALLED_WORKFLOW_INSTANCE_ID, activityInstance.calledWorkflowInstanceId);
+    writeScopeInstance(dbActivityInstance, activityInstance);
+    if (includeWorkState) {
+      writeStringOpt(dbActivityInstance, WORK_STATE, activityInstance.workState);
+    }
+    return dbActivityInstance;
+  }
+
+  /** the fields that workflow instances and activity instances have in common.  
+   * Properties are written as top level fields, like the api model mapping does. */
+  protected void writeScopeInstance(BasicDBObject dbScopeInstance, ScopeInstanceImpl scopeInstance) {
+    writeTimeOpt(dbScopeInstance, START, scopeInstance.start);
+    writeTimeOpt(dbScopeInstance, END, scopeInstance.end);
+    writeStringOpt(dbScopeInstance, END_STATE, scopeInstance.endState);
+    writeLongOpt(dbScopeInstance, DURATION, scopeInstance.duration);
+    writeVariableInstances(dbScopeInstance, scopeInstance);
+    if (scopeInstance.properties!=null) {
+      for (Map.Entry<String,Object> property: scopeInstance.properties.entrySet()) {
+        writeObjectOpt(dbScopeInstance, property.getKey(), writePropertyValue(property.getValue()));
+      }
+    }
+  }
+
+  protected Object writePropertyValue(Object value) {
+    if (value==null
+        || value instanceof String
+        || value instanceof Number
+        || value instanceof Boolean
+        || value instanceof Date) {
+      return value;
+    }
+    return mongoMapper.write(value);
+  }
+
+  /** ended activity instances without pending work (null means done) can be archived */
+  protected boolean isArchivable(ActivityInstanceImpl activityInstance) {
+    return activityInstance.workState==null 
+           && activityInstance.end!=null;
+  }
+
+  /** serializes the activityInstance and its nested activity instances that are not yet archived 
+   * to DB format, adds them to the dbArchivedActivityInstances as a flat list and marks them archived */
+  protected void collectArchivedActivities(ActivityInstanceImpl activityInstance, BasicDBList dbArchivedActivityInstances) {
+    BasicDBObject dbActivity = writeActivityInstance(activityInstance, false);
+    String parentId = (activityInstance.parent.isWorkflowInstance() ? null : ((ActivityInstanceImpl) activityInstance.parent).id);
+    writeString(dbActivity, PARENT, parentId);
+    dbArchivedActivityInstances.add(dbActivity);
+    activityInstance.isArchived = true;
+    if (activityInstance.activityInstances!=null) {
+      for (ActivityInstanceImpl nestedActivityInstance: activityInstance.activityInstances) {
+        if (!nestedActivityInstance.isArchived) {
+          collectArchivedActivities(nestedActivityInstance, dbArchivedActivityInstances);
         }
-        collectArchivedActivities(activityInstance, dbArchivedActivityInstances);
       }
-      scopeInstance.activityInstances = activeActivityInstances;
     }
   }
 
   protected void writeVariableInstances(BasicDBObject dbScope, ScopeInstanceImpl scope) {
     if (scope.variableInstances!=null) {
       for (VariableInstanceImpl variableInstanceImpl: scope.variableInstances) {
+        writeListElementOpt(dbScope, VARIABLE_INSTANCES, writeVariableInstance(variableInstanceImpl));
+      }
+    }
+  }
 
-        // todo:
-        // Pls remove this hack
-        if((variableInstanceImpl.getType().getDataType() instanceof TextType) && variableInstanceImpl.getValue() != null) {
-
-          if (!String.class.equals(variableInstanceImpl.getValue().getClass())) {
-            log.debug("Changing datatype from " + variableInstanceImpl.getValue().getClass().toString() + " to " + String.class.toString() + ". Value: " + variableInstanceImpl.toString());
-          }
+  /** only serializes the variable instances of which the value changed and sets 
+   * them by position as the variable instances are read and written in list order.
+   * New variable instances can't be $pushed in the same update, so then all are written. */
+  protected void writeVariableInstanceUpdates(BasicDBObject sets, ScopeInstanceImpl scope) {
+    if (scope.variableInstances==null) {
+      return;
+    }
+    for (VariableInstanceImpl variableInstanceImpl: scope.variableInstances) {
+      VariableInstanceUpdates variableUpdates = variableInstanceImpl.getUpdates();
+      if (variableUpdates==null || variableUpdates.isNew) {
+        writeVariableInstances(sets, scope);
+        return;
+      }
+    }
+    for (int i=0; i<scope.variableInstances.size(); i++) {
+      VariableInstanceImpl variableInstanceImpl = scope.variableInstances.get(i);
+      if (variableInstanceImpl.getUpdates().isValueChanged) {
+        sets.append(VARIABLE_INSTANCES+"."+i, writeVariableInstance(variableInstanceImpl));
+      }
+    }
+  }
 
-          variableInstanceImpl.setValue(variableInstanceImpl.getValue().toString());
-        }
-        // until here
+  protected BasicDBObject writeVariableInstance(VariableInstanceImpl variableInstanceImpl) {
+    // todo:
+    // Pls remove this hack
+    if((variableInstanceImpl.getType().getDataType() instanceof TextType) && variableInstanceImpl.getValue() != null) {
 
-        VariableInstance variableInstance = variableInstanceImpl.toVariableInstance();
-        BasicDBObject dbVariable = mongoMapper.write(variableInstance);
-        writeListElementOpt(dbScope, VARIABLE_INSTANCES, dbVariable);
+      if (!String.class.equals(variableInstanceImpl.getValue().getClass())) {
+        log.debug("Changing datatype from " + variableInstanceImpl.getValue().getClass().toString() + " to " + String.class.toString() + ". Value: " + variableInstanceImpl.toString());
       }
+
+      variableInstanceImpl.setValue(variableInstanceImpl.getValue().toString());
+    }
+    // until here
+
+    Object value = variableInstanceImpl.value;
+    if (value==null
+        || value instanceof String
+        || value instanceof Number
+        || value instanceof Boolean) {
+      // values that the mapper would write unchanged are written directly
+      BasicDBObject dbVariableInstance = new BasicDBObject();
+      writeStringOpt(dbVariableInstance, WorkflowInstanceFields.VariableInstance.VARIABLE_ID, variableInstanceImpl.variable.id);
+      writeObjectOpt(dbVariableInstance, WorkflowInstanceFields.VariableInstance.VALUE, value);
+      writeObjectOpt(dbVariableInstance, WorkflowInstanceFields.VariableInstance.TYPE, mongoMapper.write(variableInstanceImpl.type.serialize()));
+      return dbVariableInstance;
     }
+    VariableInstance variableInstance = variableInstanceImpl.toVariableInstance();
+    return mongoMapper.write(variableInstance);
   }
 
   protected List<BasicDBObject> writeJobs(List<Job> jobs) {
@@ -58,6 +58,9 @@ public class MongoWorkflowStore implements WorkflowStore, Brewable {
     MongoDb mongoDb = brewery.get(MongoDb.class);
     MongoConfiguration mongoConfiguration = brewery.get(MongoConfiguration.class);
     this.workflowsCollection = mongoDb.createCollection(mongoConfiguration.getWorkflowsCollectionName());
+    if (mongoConfiguration.isCreateIndexes()) {
+      workflowsCollection.ensureIndexes(mongoConfiguration.getWorkflowsIndexes());
+    }
     this.configuration = brewery.get(Configuration.class);
     this.workflowEngine = brewery.get(WorkflowEngineImpl.class);
     this.activityTypeService = brewery.get(ActivityTypeService.class);
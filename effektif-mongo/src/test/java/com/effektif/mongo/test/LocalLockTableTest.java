@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.mongo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.effektif.mongo.LocalLockTable;
+import com.effektif.workflow.api.model.WorkflowInstanceId;
+
+
+public class LocalLockTableTest {
+
+  static final WorkflowInstanceId ID = new WorkflowInstanceId("wi");
+
+  @Test
+  public void testHandoffToRejectedAttempt() {
+    LocalLockTable<String> table = new LocalLockTable<>(4, 10000);
+    LocalLockTable.Grant<String> grant = table.acquire(ID);
+    assertFalse(grant.isHandoff());
+
+    // the second attempt fails fast and waits for the local unlock
+    assertNull(table.acquire(ID));
+    table.waiting(ID);
+    assertTrue(table.isContended(ID));
+
+    assertTrue(table.release(ID));
+    table.handOff(ID, "snapshot");
+
+    LocalLockTable.Grant<String> retryGrant = table.acquire(ID);
+    assertTrue(retryGrant.isHandoff());
+    assertEquals("snapshot", retryGrant.getHandoff());
+    // nobody else tried so the lock has to be released in the db
+    assertFalse(table.release(ID));
+  }
+
+  @Test
+  public void testRejectedAttemptThatDoesntWaitIsNoContention() {
+    LocalLockTable<String> table = new LocalLockTable<>(4, 10000);
+    table.acquire(ID);
+    assertNull(table.acquire(ID));
+    assertFalse(table.isContended(ID));
+    // nobody waits so the holder has to release the lock in the db
+    assertFalse(table.release(ID));
+    assertFalse(table.acquire(ID).isHandoff());
+  }
+
+  @Test
+  public void testUncontendedRelease() {
+    LocalLockTable<String> table = new LocalLockTable<>(4, 10000);
+    table.acquire(ID);
+    assertFalse(table.release(ID));
+    assertFalse(table.acquire(ID).isHandoff());
+  }
+
+  @Test
+  public void testFailedDbLockFreesTheReservation() {
+    LocalLockTable<String> table = new LocalLockTable<>(4, 10000);
+    table.acquire(ID);
+    table.dbLockFailed(ID);
+    assertFalse(table.acquire(ID).isHandoff());
+  }
+
+  @Test
+  public void testExpiredHandoff() throws Exception {
+    LocalLockTable<String> table = new LocalLockTable<>(4, 100);
+    table.acquire(ID);
+    assertNull(table.acquire(ID));
+    table.waiting(ID);
+    assertTrue(table.release(ID));
+    table.handOff(ID, "snapshot");
+    assertEquals(Collections.emptyList(), table.removeExpiredHandoffs());
+
+    Thread.sleep(150);
+    // the rejected attempt didn't come back so the db lock has to be released
+    assertEquals(Collections.singletonList(ID), table.removeExpiredHandoffs());
+    assertFalse(table.acquire(ID).isHandoff());
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.mongo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.effektif.mongo.MongoCollection;
+import com.effektif.mongo.MongoJobPartitions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteResult;
+
+
+/** Tests the lease renewal and the fair share rebalancing 
+ * against an in-memory leases collection, so without a running MongoDB. */
+public class MongoJobPartitionsTest {
+
+  static final int PARTITIONS = 4;
+
+  /** only used to create cursors, it never connects */
+  static MongoClient mongoClient;
+  static DBCollection leasesDbCollection;
+
+  @BeforeClass
+  public static void createCollection() {
+    mongoClient = new MongoClient();
+    leasesDbCollection = mongoClient.getDB("test").getCollection("jobPartitionLeases");
+  }
+
+  @AfterClass
+  public static void closeClient() {
+    mongoClient.close();
+  }
+
+  @Test
+  public void testSingleNodeLeasesAllPartitions() {
+    FakeCollection leases = new FakeCollection();
+    TestJobPartitions a = new TestJobPartitions("a", leases);
+    assertEquals(PARTITIONS, a.getLeasedPartitions().size());
+  }
+
+  @Test
+  public void testRebalanceWhenNodeJoins() {
+    FakeCollection leases = new FakeCollection();
+    TestJobPartitions a = new TestJobPartitions("a", leases);
+    a.renewLeases();
+    assertEquals(PARTITIONS, a.getLeasedPartitions().size());
+
+    // all partitions are still leased by a
+    TestJobPartitions b = new TestJobPartitions("b", leases);
+    b.renewLeases();
+    assertEquals(0, b.getLeasedPartitions().size());
+
+    // a sees b's heartbeat and releases the partitions above its fair share
+    a.renewLeases();
+    assertEquals(PARTITIONS/2, a.getLeasedPartitions().size());
+    b.renewLeases();
+    assertEquals(PARTITIONS/2, b.getLeasedPartitions().size());
+
+    Set<Integer> all = new HashSet<>(a.getLeasedPartitions());
+    all.addAll(b.getLeasedPartitions());
+    assertEquals(PARTITIONS, all.size());
+  }
+
+  @Test
+  public void testEveryNodeLeasesAPartitionWhenTheyDontDivideEvenly() {
+    FakeCollection leases = new FakeCollection();
+    TestJobPartitions a = new TestJobPartitions("a", leases);
+    a.renewLeases();
+    TestJobPartitions b = new TestJobPartitions("b", leases);
+    TestJobPartitions c = new TestJobPartitions("c", leases);
+    b.renewLeases();
+    c.renewLeases();
+
+    for (int i=0; i<2; i++) {
+      a.renewLeases();
+      b.renewLeases();
+      c.renewLeases();
+    }
+
+    // 4 partitions over 3 nodes: the first node by id gets the extra partition
+    assertEquals(2, a.getLeasedPartitions().size());
+    assertEquals(1, b.getLeasedPartitions().size());
+    assertEquals(1, c.getLeasedPartitions().size());
+
+    Set<Integer> all = new HashSet<>(a.getLeasedPartitions());
+    all.addAll(b.getLeasedPartitions());
+    all.addAll(c.getLeasedPartitions());
+    assertEquals(PARTITIONS, all.size());
+  }
+
+  @Test
+  public void testRenewalExtendsTheLeases() {
+    FakeCollection leases = new FakeCollection();
+    TestJobPartitions a = new TestJobPartitions("a", leases);
+    a.renewLeases();
+    Date expires = (Date) leases.documents.get(0).get("expires");
+    leases.documents.get(0).put("expires", new Date(expires.getTime()-1000));
+
+    a.renewLeases();
+    assertTrue(((Date)leases.documents.get(0).get("expires")).getTime()>=expires.getTime());
+    assertEquals(PARTITIONS, a.getLeasedPartitions().size());
+  }
+
+  @Test
+  public void testExpiredHeartbeatIsRemoved() {
+    FakeCollection leases = new FakeCollection();
+    leases.documents.put("node-stopped", new BasicDBObject("_id", "node-stopped")
+      .append("node", true)
+      .append("expires", new Date(System.currentTimeMillis()-1000)));
+
+    TestJobPartitions a = new TestJobPartitions("a", leases);
+    a.renewLeases();
+
+    assertFalse(leases.documents.containsKey("node-stopped"));
+    // the stopped node doesn't count for the fair share
+    assertEquals(PARTITIONS, a.getLeasedPartitions().size());
+  }
+
+  static class TestJobPartitions extends MongoJobPartitions {
+    public TestJobPartitions(String owner, MongoCollection leasesCollection) {
+      this.partitionCount = PARTITIONS;
+      this.leaseTime = 60000;
+      this.owner = owner;
+      this.leasesCollection = leasesCollection;
+    }
+  }
+
+  /** keeps the documents in memory and supports the 
+   * equality, $in, $gt and $lte criteria and $set updates */
+  static class FakeCollection extends MongoCollection {
+    Map<Object, BasicDBObject> documents = new LinkedHashMap<>();
+
+    public FakeCollection() {
+      super(leasesDbCollection, false);
+    }
+
+    @Override
+    public List<BulkWriteError> insertAll(String description, List<BasicDBObject> dbObjects) {
+      for (BasicDBObject dbObject: dbObjects) {
+        if (!documents.containsKey(dbObject.get("_id"))) {
+          documents.put(dbObject.get("_id"), dbObject);
+        }
+      }
+      return new ArrayList<>();
+    }
+
+    @Override
+    public WriteResult update(String description, DBObject query, DBObject update, boolean upsert, boolean multi) {
+      int n = 0;
+      for (BasicDBObject document: find(query)) {
+        apply(document, update);
+        n++;
+        if (!multi) {
+          break;
+        }
+      }
+      if (n==0 && upsert) {
+        BasicDBObject document = new BasicDBObject("_id", query.get("_id"));
+        apply(document, update);
+        documents.put(document.get("_id"), document);
+        n = 1;
+      }
+      return new WriteResult(n, n>0, null);
+    }
+
+    @Override
+    public long count(String description, DBObject query) {
+      return find(query).size();
+    }
+
+    @Override
+    public DBCursor find(String description, DBObject query) {
+      final Iterator<BasicDBObject> iterator = find(query).iterator();
+      return new DBCursor(leasesDbCollection, query, null, ReadPreference.primary()) {
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+        @Override
+        public DBObject next() {
+          return iterator.next();
+        }
+      };
+    }
+
+    @Override
+    public WriteResult remove(String description, DBObject query) {
+      List<BasicDBObject> removed = find(query);
+      for (BasicDBObject document: removed) {
+        documents.remove(document.get("_id"));
+      }
+      return new WriteResult(removed.size(), false, null);
+    }
+
+    void apply(BasicDBObject document, DBObject update) {
+      DBObject sets = (DBObject) update.get("$set");
+      if (sets!=null) {
+        document.putAll(sets);
+      } else {
+        Object id = document.get("_id");
+        document.clear();
+        document.putAll(update);
+        document.put("_id", id);
+      }
+    }
+
+    List<BasicDBObject> find(DBObject query) {
+      List<BasicDBObject> found = new ArrayList<>();
+      for (BasicDBObject document: documents.values()) {
+        if (matches(document, query)) {
+          found.add(document);
+        }
+      }
+      return found;
+    }
+
+    boolean matches(BasicDBObject document, DBObject query) {
+      for (String field: query.keySet()) {
+        Object criteria = query.get(field);
+        Object value = document.get(field);
+        if (criteria instanceof DBObject) {
+          DBObject operators = (DBObject) criteria;
+          for (String operator: operators.keySet()) {
+            Object operand = operators.get(operator);
+            if ("$in".equals(operator)) {
+              if (!((Collection<?>)operand).contains(value)) {
+                return false;
+              }
+            } else if ("$gt".equals(operator)) {
+              if (value==null || ((Date)value).compareTo((Date)operand)<=0) {
+                return false;
+              }
+            } else if ("$lte".equals(operator)) {
+              if (value==null || ((Date)value).compareTo((Date)operand)>0) {
+                return false;
+              }
+            } else {
+              throw new UnsupportedOperationException(operator);
+            }
+          }
+        } else if (criteria==null ? value!=null : !criteria.equals(value)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
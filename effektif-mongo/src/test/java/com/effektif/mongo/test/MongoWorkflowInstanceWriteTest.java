@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.mongo.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import com.effektif.mongo.MongoConfiguration;
+import com.effektif.mongo.MongoObjectMapper;
+import com.effektif.mongo.MongoWorkflowInstanceStore;
+import com.effektif.workflow.api.model.WorkflowId;
+import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.impl.data.types.NumberTypeImpl;
+import com.effektif.workflow.impl.data.types.TextTypeImpl;
+import com.effektif.workflow.impl.workflow.ActivityImpl;
+import com.effektif.workflow.impl.workflow.VariableImpl;
+import com.effektif.workflow.impl.workflow.WorkflowImpl;
+import com.effektif.workflow.impl.workflowinstance.ActivityInstanceImpl;
+import com.effektif.workflow.impl.workflowinstance.ScopeInstanceImpl;
+import com.effektif.workflow.impl.workflowinstance.VariableInstanceImpl;
+import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
+import com.mongodb.BasicDBObject;
+
+
+/** Checks that the direct write of the runtime tree produces the same 
+ * document as mapping the api model.  Doesn't need a running MongoDB.
+ */
+public class MongoWorkflowInstanceWriteTest {
+
+  @Test
+  public void testDirectWriteMatchesApiModelMapping() {
+    MongoConfiguration configuration = new MongoConfiguration().disableIndexCreation();
+    MongoWorkflowInstanceStore store = configuration.get(MongoWorkflowInstanceStore.class);
+    MongoObjectMapper mongoMapper = configuration.get(MongoObjectMapper.class);
+    WorkflowInstanceImpl workflowInstance = createWorkflowInstance(3, 3);
+
+    BasicDBObject expected = mongoMapper.write(workflowInstance.toWorkflowInstance(true));
+    BasicDBObject actual = store.writeWorkflowInstance(workflowInstance);
+    assertEquals(expected, actual);
+  }
+
+  /** a tree of activity instances with the given depth and breadth, each with variable instances */
+  static WorkflowInstanceImpl createWorkflowInstance(int depth, int breadth) {
+    WorkflowImpl workflow = new WorkflowImpl();
+    workflow.id = new WorkflowId("5a0000000000000000000001");
+    WorkflowInstanceImpl workflowInstance = new WorkflowInstanceImpl();
+    workflowInstance.id = new WorkflowInstanceId("5a0000000000000000000002");
+    workflowInstance.workflow = workflow;
+    workflowInstance.workflowInstance = workflowInstance;
+    workflowInstance.businessKey = "order-123";
+    workflowInstance.start = new LocalDateTime();
+    workflowInstance.properties = new HashMap<>();
+    workflowInstance.properties.put("organizationId", "org");
+    workflowInstance.properties.put("priority", 3);
+    addVariableInstances(workflowInstance);
+    addActivityInstances(workflowInstance, depth, breadth, "");
+    return workflowInstance;
+  }
+
+  static void addActivityInstances(ScopeInstanceImpl parent, int depth, int breadth, String prefix) {
+    if (depth==0) {
+      return;
+    }
+    parent.activityInstances = new ArrayList<>();
+    for (int i=0; i<breadth; i++) {
+      ActivityImpl activity = new ActivityImpl();
+      activity.id = "a"+prefix+i;
+      ActivityInstanceImpl activityInstance = new ActivityInstanceImpl();
+      activityInstance.id = prefix+i;
+      activityInstance.activity = activity;
+      activityInstance.parent = parent;
+      activityInstance.workflowInstance = parent.workflowInstance;
+      activityInstance.start = new LocalDateTime();
+      if (i%2==0) {
+        activityInstance.end = new LocalDateTime();
+        activityInstance.duration = 5L;
+        activityInstance.endState = "done";
+      } else {
+        activityInstance.workState = "waiting";
+      }
+      addVariableInstances(activityInstance);
+      parent.activityInstances.add(activityInstance);
+      addActivityInstances(activityInstance, depth-1, breadth, prefix+i+".");
+    }
+  }
+
+  static void addVariableInstances(ScopeInstanceImpl parent) {
+    parent.variableInstances = new ArrayList<>();
+    VariableImpl text = new VariableImpl();
+    text.id = "text";
+    VariableInstanceImpl textInstance = new VariableInstanceImpl(parent, text, "v1");
+    textInstance.type = new TextTypeImpl();
+    textInstance.value = "hello";
+    parent.variableInstances.add(textInstance);
+    VariableImpl number = new VariableImpl();
+    number.id = "number";
+    VariableInstanceImpl numberInstance = new VariableInstanceImpl(parent, number, "v2");
+    numberInstance.type = new NumberTypeImpl();
+    numberInstance.value = 42;
+    parent.variableInstances.add(numberInstance);
+  }
+}
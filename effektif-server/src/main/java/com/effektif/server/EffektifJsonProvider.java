@@ -15,9 +15,7 @@ package com.effektif.server;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 
@@ -62,7 +60,7 @@ public class EffektifJsonProvider implements MessageBodyReader<Object>, MessageB
   public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
           InputStream entityStream) throws IOException, WebApplicationException {
     log.info("readFrom("+type.getName()+", "+genericType.toString()+", "+mediaType);
-    return jsonMapper.read(new InputStreamReader(entityStream), type);
+    return jsonMapper.read(entityStream, type);
   }
 
   @Override
@@ -80,6 +78,6 @@ public class EffektifJsonProvider implements MessageBodyReader<Object>, MessageB
   public void writeTo(Object t, Class< ? > type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
           OutputStream entityStream) throws IOException, WebApplicationException {
     log.info("writeTo("+t+", "+genericType.toString()+", "+mediaType);
-    jsonMapper.write(t, new OutputStreamWriter(entityStream));
+    jsonMapper.write(t, entityStream);
   }
 }
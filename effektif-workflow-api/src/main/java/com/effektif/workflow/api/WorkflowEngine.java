@@ -16,6 +16,7 @@
 package com.effektif.workflow.api;
 
 import com.effektif.workflow.api.model.*;
+import com.effektif.workflow.api.query.QueryIterator;
 import com.effektif.workflow.api.query.WorkflowInstanceQuery;
 import com.effektif.workflow.api.query.WorkflowQuery;
 import com.effektif.workflow.api.workflow.ExecutableWorkflow;
@@ -48,6 +49,12 @@ public interface WorkflowEngine {
    * to end the specified activity instance and move workflow execution forward from there. */
   WorkflowInstance send(Message message);
 
+  /** Sends a batch of {@link Message messages}.  Messages for the same workflow instance 
+   * are applied in list order under a single lock, load and flush.  Messages for different 
+   * workflow instances are delivered in parallel.
+   * @return one result per message in the same order as the given messages. */
+  List<MessageResult> sendAll(List<Message> messages);
+
   WorkflowInstance move(WorkflowInstanceId workflowInstanceId, String activityInstanceId, String newActivityId);
   WorkflowInstance move(WorkflowInstanceId workflowInstanceId, String newActivityId);
 
@@ -62,6 +69,11 @@ public interface WorkflowEngine {
   void setVariableValues(WorkflowInstanceId workflowInstanceId, String activityInstanceId, VariableValues variableValues);
 
   List<WorkflowInstance> findWorkflowInstances(WorkflowInstanceQuery query);
+
+  /** like {@link #findWorkflowInstances(WorkflowInstanceQuery)} but fetches the 
+   * workflow instances in batches while iterating, so that large results 
+   * don't have to fit in memory. */
+  QueryIterator<WorkflowInstance> iterateWorkflowInstances(WorkflowInstanceQuery query);
   
   void deleteWorkflowInstances(WorkflowInstanceQuery query);
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.api.model;
+
+import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
+
+
+/**
+ * Outcome of one {@link Message} delivered with 
+ * {@link com.effektif.workflow.api.WorkflowEngine#sendAll(java.util.List)}.
+ * 
+ * Either the workflow instance after the message was applied 
+ * or the error why the message couldn't be delivered.
+ */
+public class MessageResult {
+
+  protected Message message;
+  protected WorkflowInstance workflowInstance;
+  protected String error;
+
+  public MessageResult() {
+  }
+
+  public MessageResult(Message message) {
+    this.message = message;
+  }
+
+  public Message getMessage() {
+    return this.message;
+  }
+  public void setMessage(Message message) {
+    this.message = message;
+  }
+
+  public WorkflowInstance getWorkflowInstance() {
+    return this.workflowInstance;
+  }
+  public void setWorkflowInstance(WorkflowInstance workflowInstance) {
+    this.workflowInstance = workflowInstance;
+  }
+
+  public String getError() {
+    return this.error;
+  }
+  public void setError(String error) {
+    this.error = error;
+  }
+  
+  public boolean isSuccess() {
+    return error==null;
+  }
+}
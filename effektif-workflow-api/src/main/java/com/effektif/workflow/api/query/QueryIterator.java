@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.api.query;
+
+import java.util.Iterator;
+
+
+/**
+ * Iterates over query results that are fetched in batches 
+ * instead of being loaded all at once.
+ * 
+ * Close the iterator when it's not iterated to the end 
+ * so that the underlying cursor is released.
+ */
+public interface QueryIterator<T> extends Iterator<T>, AutoCloseable {
+
+  @Override
+  void close();
+}
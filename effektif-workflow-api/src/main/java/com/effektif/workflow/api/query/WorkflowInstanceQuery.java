@@ -18,6 +18,7 @@ package com.effektif.workflow.api.query;
 import com.effektif.workflow.api.model.WorkflowInstanceId;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -26,13 +27,24 @@ import java.util.List;
  */
 public class WorkflowInstanceQuery {
 
+  public static final String FIELD_ID = "id";
+  public static final String FIELD_WORKFLOW_ID = "workflowId";
+  public static final String FIELD_BUSINESS_KEY = "businessKey";
   public static final String FIELD_START = "start";
+  public static final String FIELD_END = "end";
+  public static final String FIELD_DURATION = "duration";
+  public static final String FIELD_END_STATE = "endState";
+  public static final String FIELD_ACTIVITY_INSTANCES = "activityInstances";
+  public static final String FIELD_VARIABLE_INSTANCES = "variableInstances";
+  public static final String FIELD_PROPERTIES = "properties";
 
   protected WorkflowInstanceId workflowInstanceId;
   protected String activityId;
   protected Integer skip;
   protected Integer limit;
   protected List<OrderBy> orderBy;
+  protected List<String> fields;
+  protected Integer batchSize;
   
   public WorkflowInstanceQuery workflowInstanceId(WorkflowInstanceId workflowInstanceId) {
     setWorkflowInstanceId(workflowInstanceId);
@@ -97,6 +109,36 @@ public class WorkflowInstanceQuery {
     return this;
   }
   
+  public Integer getBatchSize() {
+    return this.batchSize;
+  }
+  public void setBatchSize(Integer batchSize) {
+    this.batchSize = batchSize;
+  }
+  /** the number of workflow instances fetched per round trip 
+   * when {@link com.effektif.workflow.api.WorkflowEngine#iterateWorkflowInstances(WorkflowInstanceQuery) iterating} */
+  public WorkflowInstanceQuery batchSize(Integer batchSize) {
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /** only loads the given fields (see the FIELD_* constants) of the workflow 
+   * instances, which lets the store skip parsing the full workflow instances.
+   * Other fields of the returned workflow instances may be left empty. 
+   * The id is always included. */
+  public WorkflowInstanceQuery fields(String... fields) {
+    setFields(fields!=null ? new ArrayList<>(Arrays.asList(fields)) : null);
+    return this;
+  }
+
+  public List<String> getFields() {
+    return fields;
+  }
+
+  public void setFields(List<String> fields) {
+    this.fields = fields;
+  }
+
   public void orderBy(String field, OrderDirection direction) {
     if (orderBy==null) {
       orderBy = new ArrayList<>();
@@ -15,72 +15,249 @@
  */
 package com.effektif.workflow.impl;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 
 import com.effektif.workflow.impl.configuration.Brewable;
 import com.effektif.workflow.impl.configuration.Brewery;
+import com.effektif.workflow.impl.metrics.Histogram;
+import com.effektif.workflow.impl.metrics.MetricsRegistry;
 
 
 /**
+ * Executes commands on a thread pool.
+ * 
+ * Pool sizes, queue capacity, rejection policy and thread names 
+ * can be configured before the workflow engine is started.  
+ * By default the queue is unbounded.  With a {@link #queueCapacity(int) queue capacity}, 
+ * commands that arrive when the queue is full and all threads are busy 
+ * are executed by the default {@link ThreadPoolExecutor.CallerRunsPolicy} 
+ * in the calling thread, which slows down the producers.
+ * 
+ * When a {@link MetricsRegistry} is configured, the counters and the 
+ * wait and execution time histograms are kept in the registry under 
+ * the {@link #metricsName(String) metrics name}.
+ * 
  * @author Tom Baeyens
  */
 public class AsynchronousExecutorService implements ExecutorService, Brewable {
   
   private static final Logger log = WorkflowEngineImpl.log;
   
-  // TODO apply these tips: http://java.dzone.com/articles/executorservice-10-tips-and
+  // configuration
+  public int corePoolSize = 4;
+  public int maxPoolSize = 4;
+  /** max number of commands waiting for a thread, <=0 means unbounded */
+  public int queueCapacity = 0;
+  public long keepAliveTime = 60;
+  public TimeUnit keepAliveTimeUnit = TimeUnit.SECONDS;
+  public RejectedExecutionHandler rejectionPolicy = new ThreadPoolExecutor.CallerRunsPolicy();
+  public String threadNamePrefix = "effektif-executor-";
+  public long shutdownTimeout = 30;
+  public TimeUnit shutdownTimeUnit = TimeUnit.SECONDS;
+  /** prefix of the metrics in the {@link MetricsRegistry}, give a separate job pool its own name */
+  public String metricsName = "executor";
 
+  // runtime state
   public Executor executor;
   public BlockingQueue<Runnable> queue;
-  public long shutdownTimeout = 30;                    // TODO make configurable
-  public TimeUnit shutdownTimeUnit = TimeUnit.SECONDS; // TODO make configurable
+  protected ThreadPoolExecutor threadPoolExecutor;
+
+  // metrics
+  protected AtomicLong executedCount = new AtomicLong();
+  protected AtomicLong rejectedCount = new AtomicLong();
+  protected AtomicLong totalWaitNanos = new AtomicLong();
+  protected AtomicLong totalExecutionNanos = new AtomicLong();
+  /** null if no {@link MetricsRegistry} is configured */
+  protected Histogram waitTimes;
+  protected Histogram executionTimes;
 
   public AsynchronousExecutorService() {
   }
 
   @Override
   public void brew(Brewery brewery) {
-    ScheduledThreadPoolExecutor scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(4, new ThreadPoolExecutor.CallerRunsPolicy());
-    this.queue = scheduledThreadPoolExecutor.getQueue();
-    this.executor = scheduledThreadPoolExecutor;
+    this.queue = queueCapacity>0 
+            ? new ArrayBlockingQueue<Runnable>(queueCapacity) 
+            : new LinkedBlockingQueue<Runnable>();
+    this.threadPoolExecutor = new ThreadPoolExecutor(
+            corePoolSize, 
+            Math.max(corePoolSize, maxPoolSize), 
+            keepAliveTime, 
+            keepAliveTimeUnit, 
+            queue, 
+            new NamedThreadFactory(threadNamePrefix),
+            new CountingRejectionPolicy(rejectionPolicy));
+    this.executor = threadPoolExecutor;
+    MetricsRegistry metricsRegistry = brewery!=null ? brewery.getOpt(MetricsRegistry.class) : null;
+    if (metricsRegistry!=null) {
+      this.executedCount = metricsRegistry.counter(metricsName+".executed");
+      this.rejectedCount = metricsRegistry.counter(metricsName+".rejected");
+      this.waitTimes = metricsRegistry.histogram(metricsName+".waitTime");
+      this.executionTimes = metricsRegistry.histogram(metricsName+".executionTime");
+    }
   }
 
   @Override
   public void execute(Runnable command) {
 //    if (log.isDebugEnabled()) log.debug("Command executes asynchronous: "+command);
-    executor.execute(command);
+    executor.execute(new TimedCommand(command));
   }
 
   public int getQueueDepth() {
     return queue.size();
   }
 
+  /** number of threads that are executing commands */
+  public int getActiveCount() {
+    return threadPoolExecutor.getActiveCount();
+  }
+
+  public int getPoolSize() {
+    return threadPoolExecutor.getPoolSize();
+  }
+
+  public long getExecutedCount() {
+    return executedCount.get();
+  }
+
+  /** number of commands that were handed to the rejection policy because 
+   * the queue was full, with the default policy those are executed in the calling thread */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /** average millis between submitting a command and the start of its execution */
+  public double getAverageWaitTime() {
+    long executed = executedCount.get();
+    return executed>0 ? totalWaitNanos.get() / 1000000d / executed : 0;
+  }
+
+  /** average millis it took to execute a command */
+  public double getAverageExecutionTime() {
+    long executed = executedCount.get();
+    return executed>0 ? totalExecutionNanos.get() / 1000000d / executed : 0;
+  }
+
   @Override
   public void startup() {
   }
 
   @Override
   public void shutdown() {
-    if (executor instanceof ScheduledExecutorService) {
-      if (!((ScheduledExecutorService)executor).isShutdown()) {
-        try {
-          ScheduledExecutorService scheduledExecutorService = (ScheduledExecutorService) executor;
+    if (!threadPoolExecutor.isShutdown()) {
+      try {
+        log.debug("shutting down executor "+threadPoolExecutor);
+        threadPoolExecutor.shutdown();
+        if (!threadPoolExecutor.awaitTermination(shutdownTimeout, shutdownTimeUnit)) {
+          log.warn("Executor didn't terminate within "+shutdownTimeout+" "+shutdownTimeUnit+", "+queue.size()+" commands still queued");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 
-          log.debug("shutting down executor "+executor);
+  public AsynchronousExecutorService corePoolSize(int corePoolSize) {
+    this.corePoolSize = corePoolSize;
+    return this;
+  }
 
-          scheduledExecutorService.shutdown();
-          scheduledExecutorService.awaitTermination(shutdownTimeout, shutdownTimeUnit);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
+  public AsynchronousExecutorService maxPoolSize(int maxPoolSize) {
+    this.maxPoolSize = maxPoolSize;
+    return this;
+  }
+
+  public AsynchronousExecutorService queueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+    return this;
+  }
+
+  public AsynchronousExecutorService keepAliveTime(long keepAliveTime, TimeUnit keepAliveTimeUnit) {
+    this.keepAliveTime = keepAliveTime;
+    this.keepAliveTimeUnit = keepAliveTimeUnit;
+    return this;
+  }
+
+  public AsynchronousExecutorService rejectionPolicy(RejectedExecutionHandler rejectionPolicy) {
+    this.rejectionPolicy = rejectionPolicy;
+    return this;
+  }
+
+  public AsynchronousExecutorService threadNamePrefix(String threadNamePrefix) {
+    this.threadNamePrefix = threadNamePrefix;
+    return this;
+  }
+
+  public AsynchronousExecutorService shutdownTimeout(long shutdownTimeout, TimeUnit shutdownTimeUnit) {
+    this.shutdownTimeout = shutdownTimeout;
+    this.shutdownTimeUnit = shutdownTimeUnit;
+    return this;
+  }
+
+  public AsynchronousExecutorService metricsName(String metricsName) {
+    this.metricsName = metricsName;
+    return this;
+  }
+
+  /** records the wait and execution time of a command */
+  protected class TimedCommand implements Runnable {
+    Runnable command;
+    long submitTime = System.nanoTime();
+    public TimedCommand(Runnable command) {
+      this.command = command;
+    }
+    @Override
+    public void run() {
+      long startTime = System.nanoTime();
+      totalWaitNanos.addAndGet(startTime-submitTime);
+      if (waitTimes!=null) {
+        waitTimes.record(TimeUnit.NANOSECONDS.toMillis(startTime-submitTime));
+      }
+      try {
+        command.run();
+      } finally {
+        long executionNanos = System.nanoTime()-startTime;
+        totalExecutionNanos.addAndGet(executionNanos);
+        if (executionTimes!=null) {
+          executionTimes.record(TimeUnit.NANOSECONDS.toMillis(executionNanos));
         }
+        executedCount.incrementAndGet();
       }
     }
   }
+
+  protected class CountingRejectionPolicy implements RejectedExecutionHandler {
+    RejectedExecutionHandler delegate;
+    public CountingRejectionPolicy(RejectedExecutionHandler delegate) {
+      this.delegate = delegate;
+    }
+    @Override
+    public void rejectedExecution(Runnable command, ThreadPoolExecutor executor) {
+      rejectedCount.incrementAndGet();
+      delegate.rejectedExecution(command, executor);
+    }
+  }
+
+  protected static class NamedThreadFactory implements ThreadFactory {
+    String threadNamePrefix;
+    AtomicInteger threadCount = new AtomicInteger();
+    public NamedThreadFactory(String threadNamePrefix) {
+      this.threadNamePrefix = threadNamePrefix;
+    }
+    @Override
+    public Thread newThread(Runnable runnable) {
+      return new Thread(runnable, threadNamePrefix+threadCount.incrementAndGet());
+    }
+  }
 }
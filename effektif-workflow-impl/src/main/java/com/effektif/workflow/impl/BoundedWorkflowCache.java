@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.effektif.workflow.api.model.WorkflowId;
+import com.effektif.workflow.impl.workflow.ActivityImpl;
+import com.effektif.workflow.impl.workflow.ScopeImpl;
+import com.effektif.workflow.impl.workflow.WorkflowImpl;
+
+
+/** caches executable workflows up to a max number of entries and/or 
+ * a max estimated weight, evicting the least recently used workflows first. 
+ * 
+ * The weight of a workflow is estimated as the number of activities, 
+ * transitions, variables and timers in its (nested) scopes.
+ * 
+ * Register it in the configuration to replace the default {@link SimpleWorkflowCache}:
+ * <pre>configuration.ingredient(new BoundedWorkflowCache().maxEntries(500));</pre>
+ */
+public class BoundedWorkflowCache extends SimpleWorkflowCache {
+  
+  private static final Logger log = WorkflowEngineImpl.log;
+
+  protected int maxEntries = 1000;
+  /** max total estimated weight, 0 means no weight bound */
+  protected long maxWeight = 0;
+  protected long weight = 0;
+  protected Map<WorkflowId, Long> weights = new LinkedHashMap<>();
+
+  protected AtomicLong hits = new AtomicLong();
+  protected AtomicLong misses = new AtomicLong();
+  protected AtomicLong evictions = new AtomicLong();
+  protected AtomicLong loadCount = new AtomicLong();
+  protected AtomicLong loadTime = new AtomicLong();
+
+  public BoundedWorkflowCache() {
+    // access order makes the iteration order least recently used first
+    this.workflows = new LinkedHashMap<WorkflowId, WorkflowImpl>(16, 0.75f, true);
+  }
+
+  public BoundedWorkflowCache maxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+    return this;
+  }
+
+  public BoundedWorkflowCache maxWeight(long maxWeight) {
+    this.maxWeight = maxWeight;
+    return this;
+  }
+
+  @Override
+  public WorkflowImpl get(WorkflowId workflowId) {
+    WorkflowImpl workflow = lookup(workflowId);
+    if (workflow!=null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return workflow;
+  }
+
+  @Override
+  protected synchronized WorkflowImpl lookup(WorkflowId workflowId) {
+    return workflows.get(workflowId);
+  }
+
+  @Override
+  public synchronized void put(WorkflowImpl workflow) {
+    long workflowWeight = estimateWeight(workflow);
+    workflows.put(workflow.id, workflow);
+    Long previousWeight = weights.put(workflow.id, workflowWeight);
+    weight += workflowWeight - (previousWeight!=null ? previousWeight : 0);
+    evict(workflow.id);
+  }
+
+  /** removes the least recently used workflows till the bounds are met.  
+   * The given workflow that was just added is never evicted. */
+  protected void evict(WorkflowId addedWorkflowId) {
+    Iterator<WorkflowId> iterator = workflows.keySet().iterator();
+    while ( iterator.hasNext()
+            && ( workflows.size()>maxEntries 
+                 || (maxWeight>0 && weight>maxWeight) ) ) {
+      WorkflowId workflowId = iterator.next();
+      if (!workflowId.equals(addedWorkflowId)) {
+        iterator.remove();
+        Long workflowWeight = weights.remove(workflowId);
+        weight -= workflowWeight!=null ? workflowWeight : 0;
+        evictions.incrementAndGet();
+        if (log.isDebugEnabled()) log.debug("Evicted workflow "+workflowId+" from the workflow cache");
+      }
+    }
+  }
+
+  @Override
+  protected WorkflowImpl load(WorkflowId workflowId, Loader loader) {
+    long start = System.currentTimeMillis();
+    try {
+      return super.load(workflowId, loader);
+    } finally {
+      loadCount.incrementAndGet();
+      loadTime.addAndGet(System.currentTimeMillis()-start);
+    }
+  }
+
+  protected long estimateWeight(ScopeImpl scope) {
+    long scopeWeight = 1;
+    if (scope.activities!=null) {
+      for (ActivityImpl activity: scope.activities.values()) {
+        scopeWeight += estimateWeight(activity);
+      }
+    }
+    if (scope.transitions!=null) {
+      scopeWeight += scope.transitions.size();
+    }
+    if (scope.variables!=null) {
+      scopeWeight += scope.variables.size();
+    }
+    if (scope.timers!=null) {
+      scopeWeight += scope.timers.size();
+    }
+    return scopeWeight;
+  }
+
+  public synchronized int getSize() {
+    return workflows.size();
+  }
+
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /** number of workflows loaded on a cache miss */
+  public long getLoadCount() {
+    return loadCount.get();
+  }
+
+  /** total time in millis spent loading workflows on cache misses */
+  public long getLoadTime() {
+    return loadTime.get();
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  public void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public void setMaxWeight(long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+}
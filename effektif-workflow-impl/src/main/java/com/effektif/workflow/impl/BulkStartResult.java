@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.effektif.workflow.api.model.WorkflowInstanceId;
+
+
+/**
+ * Outcome of {@link WorkflowEngineImpl#startAll}.
+ * 
+ * The synchronous work of a workflow instance, like service tasks at the 
+ * start of the workflow, is executed before the batch is inserted.  When 
+ * the insert of a workflow instance fails, it is reported in the errors 
+ * but the side effects of its synchronous work have already happened.  
+ * Callers that retry the failed trigger instances get at-least-once 
+ * semantics for those side effects.
+ */
+public class BulkStartResult {
+
+  /** ids of the started workflow instances in the order of the trigger instances, 
+   * <code>null</code> for trigger instances that failed to start */
+  public List<WorkflowInstanceId> workflowInstanceIds = new ArrayList<>();
+  /** error messages by index of the trigger instance */
+  public Map<Integer, String> errors = new LinkedHashMap<>();
+  /** millis it took to start all workflow instances */
+  public long duration;
+
+  protected void failed(int index, Exception exception) {
+    failed(index, exception.getMessage()!=null ? exception.getMessage() : exception.toString());
+  }
+
+  protected void failed(int index, String error) {
+    workflowInstanceIds.set(index, null);
+    errors.put(index, error);
+  }
+
+  public List<WorkflowInstanceId> getWorkflowInstanceIds() {
+    return workflowInstanceIds;
+  }
+
+  public Map<Integer, String> getErrors() {
+    return errors;
+  }
+
+  public long getDuration() {
+    return duration;
+  }
+
+  public int getStartedCount() {
+    return workflowInstanceIds.size()-errors.size();
+  }
+
+  /** started workflow instances per second */
+  public double getThroughput() {
+    return getStartedCount()*1000d/Math.max(duration, 1);
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl;
+
+
+/** Determines when {@link com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl#executeWork()} 
+ * writes the collected updates to the {@link WorkflowInstanceStore} in between activities.
+ * 
+ * Updates are tracked in the dirty flags of the workflow instance updates until they 
+ * are flushed.  Skipping a flush keeps those flags, so the next flush saves the 
+ * changes of all steps in between as a single update.
+ * Regardless of the mode, updates are always flushed before going asynchronous 
+ * and when the workflow instance is unlocked.
+ * 
+ * @see WorkflowEngineConfiguration#setFlushMode(FlushMode)
+ */
+public enum FlushMode {
+
+  /** flush before every activity that is not flush skippable (default) */
+  EVERY_STEP,
+  
+  /** only flush when the execution goes asynchronous and when the workflow instance is unlocked */
+  BOUNDARIES,
+  
+  /** flush when {@link WorkflowEngineConfiguration#getFlushStepInterval()} steps 
+   * or {@link WorkflowEngineConfiguration#getFlushTimeInterval()} millis have 
+   * passed since the previous flush, whichever comes first */
+  INTERVAL
+}
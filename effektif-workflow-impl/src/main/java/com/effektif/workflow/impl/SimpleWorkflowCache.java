@@ -17,6 +17,8 @@ package com.effektif.workflow.impl;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 
 import com.effektif.workflow.api.model.WorkflowId;
 import com.effektif.workflow.impl.workflow.WorkflowImpl;
@@ -26,9 +28,16 @@ import com.effektif.workflow.impl.workflow.WorkflowImpl;
 public class SimpleWorkflowCache implements WorkflowCache {
   
   protected Map<WorkflowId, WorkflowImpl> workflows = new ConcurrentHashMap<WorkflowId, WorkflowImpl>();
+  
+  /** workflows that are being loaded, so that concurrent misses wait for the same load */
+  protected ConcurrentMap<WorkflowId, Load> loads = new ConcurrentHashMap<WorkflowId, Load>();
 
   @Override
   public WorkflowImpl get(WorkflowId workflowId) {
+    return lookup(workflowId);
+  }
+
+  protected WorkflowImpl lookup(WorkflowId workflowId) {
     return workflows.get(workflowId);
   }
 
@@ -37,6 +46,41 @@ public class SimpleWorkflowCache implements WorkflowCache {
     workflows.put(workflow.id, workflow);
   }
   
+  @Override
+  public WorkflowImpl get(WorkflowId workflowId, Loader loader) {
+    WorkflowImpl workflow = get(workflowId);
+    if (workflow!=null) {
+      return workflow;
+    }
+    Load load = new Load();
+    Load ongoingLoad = loads.putIfAbsent(workflowId, load);
+    if (ongoingLoad!=null) {
+      return ongoingLoad.await(workflowId);
+    }
+    try {
+      // a concurrent load might have finished in between the get and the putIfAbsent
+      workflow = lookup(workflowId);
+      if (workflow==null) {
+        workflow = load(workflowId, loader);
+        if (workflow!=null) {
+          put(workflow);
+        }
+      }
+      load.workflow = workflow;
+      return workflow;
+    } catch (RuntimeException e) {
+      load.exception = e;
+      throw e;
+    } finally {
+      loads.remove(workflowId, load);
+      load.done.countDown();
+    }
+  }
+
+  protected WorkflowImpl load(WorkflowId workflowId, Loader loader) {
+    return loader.load(workflowId);
+  }
+
   public Map<WorkflowId, WorkflowImpl> getWorkflows() {
     return workflows;
   }
@@ -44,4 +88,23 @@ public class SimpleWorkflowCache implements WorkflowCache {
   public void setWorkflows(Map<WorkflowId, WorkflowImpl> workflows) {
     this.workflows = workflows;
   }
+
+  protected static class Load {
+    CountDownLatch done = new CountDownLatch(1);
+    WorkflowImpl workflow;
+    RuntimeException exception;
+
+    WorkflowImpl await(WorkflowId workflowId) {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for workflow "+workflowId+" to be loaded", e);
+      }
+      if (exception!=null) {
+        throw new RuntimeException("Loading workflow "+workflowId+" failed", exception);
+      }
+      return workflow;
+    }
+  }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+import com.effektif.workflow.impl.configuration.Brewable;
+import com.effektif.workflow.impl.configuration.Brewery;
+
+
+/**
+ * Executes each command in its own thread, for work that mostly blocks 
+ * on I/O like flushes, adapter calls and sending emails.
+ * 
+ * On a JVM that supports virtual threads, those are used so that 
+ * blocked commands don't hold on to platform threads.  At most 
+ * {@link #maxConcurrency} commands execute at the same time, the others 
+ * wait for a permit in their own virtual thread so that submitting 
+ * never blocks the caller.
+ * 
+ * Otherwise a pool of at most {@link #maxConcurrency} platform threads 
+ * is used with an unbounded queue for the commands that wait, so that 
+ * waiting commands don't each park a platform thread.
+ */
+public class ThreadPerTaskExecutorService implements ExecutorService, Brewable {
+  
+  private static final Logger log = WorkflowEngineImpl.log;
+
+  // configuration
+  public int maxConcurrency = 256;
+  public String threadNamePrefix = "effektif-task-";
+  public long shutdownTimeout = 30;
+  public TimeUnit shutdownTimeUnit = TimeUnit.SECONDS;
+
+  // runtime state
+  public java.util.concurrent.ExecutorService executor;
+  public boolean isVirtual;
+  /** only used with virtual threads */
+  protected Semaphore permits;
+  /** only used without virtual threads */
+  protected ThreadPoolExecutor threadPool;
+  protected AtomicInteger waiting = new AtomicInteger();
+
+  public ThreadPerTaskExecutorService() {
+  }
+
+  public ThreadPerTaskExecutorService(int maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  @Override
+  public void brew(Brewery brewery) {
+    this.executor = createVirtualThreadExecutor();
+    this.isVirtual = executor!=null;
+    if (isVirtual) {
+      this.permits = new Semaphore(maxConcurrency);
+    } else {
+      final AtomicInteger threadCount = new AtomicInteger();
+      this.threadPool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 
+        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), 
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, threadNamePrefix+threadCount.incrementAndGet());
+          }
+        });
+      // idle threads are released like in a cached thread pool
+      threadPool.allowCoreThreadTimeOut(true);
+      this.executor = threadPool;
+    }
+    log.debug("Thread per task executor uses "+(isVirtual ? "virtual" : "platform")+" threads");
+  }
+
+  /** virtual threads are only available from Java 21 while the engine 
+   * is compiled for older versions, hence the reflection */
+  protected java.util.concurrent.ExecutorService createVirtualThreadExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (java.util.concurrent.ExecutorService) method.invoke(null);
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (Exception e) {
+      log.debug("Virtual threads not available: "+e);
+      return null;
+    }
+  }
+
+  @Override
+  public void execute(final Runnable command) {
+    if (!isVirtual) {
+      threadPool.execute(command);
+      return;
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        waiting.incrementAndGet();
+        try {
+          permits.acquire();
+        } catch (InterruptedException e) {
+          // e.g. a shutdownNow of the virtual thread executor, the command is dropped
+          log.warn("Command not executed, interrupted while waiting for a permit: "+command);
+          Thread.currentThread().interrupt();
+          return;
+        } finally {
+          waiting.decrementAndGet();
+        }
+        try {
+          command.run();
+        } finally {
+          permits.release();
+        }
+      }
+    });
+  }
+
+  /** number of commands waiting to be executed */
+  @Override
+  public int getQueueDepth() {
+    return isVirtual ? waiting.get() : threadPool.getQueue().size();
+  }
+
+  /** number of commands that are executing */
+  public int getActiveCount() {
+    return isVirtual ? maxConcurrency-permits.availablePermits() : threadPool.getActiveCount();
+  }
+
+  @Override
+  public void startup() {
+  }
+
+  @Override
+  public void shutdown() {
+    if (!executor.isShutdown()) {
+      try {
+        log.debug("shutting down executor "+executor);
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeout, shutdownTimeUnit)) {
+          log.warn("Executor didn't terminate within "+shutdownTimeout+" "+shutdownTimeUnit);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public ThreadPerTaskExecutorService maxConcurrency(int maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+    return this;
+  }
+
+  public ThreadPerTaskExecutorService threadNamePrefix(String threadNamePrefix) {
+    this.threadNamePrefix = threadNamePrefix;
+    return this;
+  }
+
+  public ThreadPerTaskExecutorService shutdownTimeout(long shutdownTimeout, TimeUnit shutdownTimeUnit) {
+    this.shutdownTimeout = shutdownTimeout;
+    this.shutdownTimeUnit = shutdownTimeUnit;
+    return this;
+  }
+}
@@ -23,4 +23,15 @@ public interface WorkflowCache {
 
   WorkflowImpl get(WorkflowId workflowId);
   void put(WorkflowImpl workflow);
+
+  /** returns the cached workflow or uses the loader to create and cache it.
+   * Concurrent misses for the same workflow id invoke the loader only once, 
+   * the other callers wait for that result. */
+  WorkflowImpl get(WorkflowId workflowId, Loader loader);
+
+  /** creates the executable workflow on a cache miss */
+  interface Loader {
+    /** returns null if the workflow doesn't exist */
+    WorkflowImpl load(WorkflowId workflowId);
+  }
 }
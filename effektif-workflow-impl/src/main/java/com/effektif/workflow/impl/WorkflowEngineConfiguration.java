@@ -27,6 +27,10 @@ import java.util.UUID;
 public class WorkflowEngineConfiguration {
 
   protected String workflowEngineId;
+  protected FlushMode flushMode = FlushMode.EVERY_STEP;
+  protected int flushStepInterval = 10;
+  protected long flushTimeInterval = 1000;
+  protected int bulkStartBatchSize = 1000;
 
   public void setWorkflowEngineId(String id) {
     this.workflowEngineId = id;
@@ -58,4 +62,39 @@ public class WorkflowEngineConfiguration {
     return id;
   }
 
+  public FlushMode getFlushMode() {
+    return flushMode;
+  }
+
+  public void setFlushMode(FlushMode flushMode) {
+    this.flushMode = flushMode;
+  }
+
+  /** max number of steps in between flushes for {@link FlushMode#INTERVAL} */
+  public int getFlushStepInterval() {
+    return flushStepInterval;
+  }
+
+  public void setFlushStepInterval(int flushStepInterval) {
+    this.flushStepInterval = flushStepInterval;
+  }
+
+  /** max number of millis in between flushes for {@link FlushMode#INTERVAL} */
+  public long getFlushTimeInterval() {
+    return flushTimeInterval;
+  }
+
+  public void setFlushTimeInterval(long flushTimeInterval) {
+    this.flushTimeInterval = flushTimeInterval;
+  }
+
+  /** number of workflow instances that {@link WorkflowEngineImpl#startAll} 
+   * inserts with a single bulk write */
+  public int getBulkStartBatchSize() {
+    return bulkStartBatchSize;
+  }
+
+  public void setBulkStartBatchSize(int bulkStartBatchSize) {
+    this.bulkStartBatchSize = bulkStartBatchSize;
+  }
 }
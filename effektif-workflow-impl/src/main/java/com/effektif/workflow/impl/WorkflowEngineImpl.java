@@ -19,6 +19,7 @@ import com.effektif.workflow.api.Configuration;
 import com.effektif.workflow.api.WorkflowEngine;
 import com.effektif.workflow.api.activities.StartEvent;
 import com.effektif.workflow.api.model.*;
+import com.effektif.workflow.api.query.QueryIterator;
 import com.effektif.workflow.api.query.WorkflowInstanceQuery;
 import com.effektif.workflow.api.query.WorkflowQuery;
 import com.effektif.workflow.api.workflow.ExecutableWorkflow;
@@ -46,9 +47,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
 
 /**
  * @author Tom Baeyens
@@ -59,12 +69,17 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
 
   public String id;
   public ExecutorService executorService;
+  /** the separate pool for jobs or null if jobs run on the executorService */
+  public ExecutorService jobExecutorService;
   public WorkflowCache workflowCache;
   public WorkflowStore workflowStore;
   public WorkflowInstanceStore workflowInstanceStore;
   public Configuration configuration;
   public List<WorkflowExecutionListener> workflowExecutionListeners;
   public DataTypeService dataTypeService;
+  /** only accessed through the engine's lock methods and {@link #unlocked(WorkflowInstanceId)} 
+   * so that no lock or unlock skips the bookkeeping */
+  private WorkflowInstanceLocks workflowInstanceLocks;
 
 
   @Override
@@ -72,17 +87,23 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
     this.id = brewery.get(WorkflowEngineConfiguration.class).getWorkflowEngineId();
     this.configuration = brewery.get(Configuration.class);
     this.executorService = brewery.get(ExecutorService.class);
+    this.jobExecutorService = (ExecutorService) brewery.getOpt(JobServiceImpl.JOB_EXECUTOR_SERVICE);
     this.workflowCache = brewery.get(WorkflowCache.class);
     this.workflowStore = brewery.get(WorkflowStore.class);
     this.workflowInstanceStore = brewery.get(WorkflowInstanceStore.class);
     this.dataTypeService = brewery.get(DataTypeService.class);
+    this.workflowInstanceLocks = new WorkflowInstanceLocks(workflowInstanceStore, executorService);
   }
 
   public void startup() {
   }
 
   public void shutdown() {
+    workflowInstanceLocks.shutdown();
     executorService.shutdown();
+    if (jobExecutorService!=null && jobExecutorService!=executorService) {
+      jobExecutorService.shutdown();
+    }
   }
 
   /// Workflow methods ////////////////////////////////////////////////////////////
@@ -152,14 +173,19 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
     WorkflowId workflowId = getLatestWorkflowId(triggerInstance);
     WorkflowImpl workflow = getWorkflowImpl(workflowId);
 
-    LockImpl lock = new LockImpl();
-    lock.setTime(Time.now());
-    lock.setOwner(getId());
-
     WorkflowInstanceId workflowInstanceId = triggerInstance.getWorkflowInstanceId();
     if (workflowInstanceId==null) {
       workflowInstanceId = workflowInstanceStore.generateWorkflowInstanceId();
     }
+    return startInitialize(triggerInstance, workflow, workflowInstanceId);
+  }
+
+  protected WorkflowInstanceImpl startInitialize(TriggerInstance triggerInstance, WorkflowImpl workflow, WorkflowInstanceId workflowInstanceId) {
+    LockImpl lock = new LockImpl();
+    lock.setTime(Time.now());
+    lock.setOwner(getId());
+
+    workflowInstanceLocks.locked(workflowInstanceId);
 
     WorkflowInstanceImpl workflowInstance = new WorkflowInstanceImpl(
             configuration,
@@ -183,6 +209,15 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
 
   /** second part of starting a new workflow instance: executing the start actvities */
   public WorkflowInstance startExecute(WorkflowInstanceImpl workflowInstance) {
+    startActivities(workflowInstance);
+    notifyInsert(workflowInstance);
+    workflowInstanceStore.insertWorkflowInstance(workflowInstance);
+    workflowInstance.executeWork();
+
+    return workflowInstance.toWorkflowInstance();
+  }
+
+  protected void startActivities(WorkflowInstanceImpl workflowInstance) {
     WorkflowImpl workflow = workflowInstance.workflow;
     if (log.isDebugEnabled()) log.debug("Starting "+workflowInstance);
 
@@ -196,12 +231,97 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
     } else {
       workflowInstance.endAndPropagateToParent();
     }
+  }
 
-    notifyInsert(workflowInstance);
-    workflowInstanceStore.insertWorkflowInstance(workflowInstance);
-    workflowInstance.executeWork();
+  /** starts a workflow instance of the given workflow for each trigger instance.
+   * The workflow is resolved once, the workflow instances are inserted 
+   * with one bulk insert per {@link WorkflowEngineConfiguration#getBulkStartBatchSize() batch}
+   * after their synchronous work is executed.  The workflow ids of the 
+   * trigger instances are ignored.  Failures are reported per trigger instance 
+   * and don't prevent the other workflow instances from being started.
+   * See {@link BulkStartResult} for the delivery semantics of the synchronous work. */
+  public BulkStartResult startAll(WorkflowId workflowId, Collection<TriggerInstance> triggerInstances) {
+    long startTime = System.currentTimeMillis();
+    WorkflowImpl workflow = getWorkflowImpl(workflowId);
+    if (workflow==null) {
+      throw new RuntimeException("Workflow "+workflowId+" not found");
+    }
+    int batchSize = configuration.get(WorkflowEngineConfiguration.class).getBulkStartBatchSize();
+    BulkStartResult result = new BulkStartResult();
+    List<TriggerInstance> batch = new ArrayList<>(Math.min(batchSize, triggerInstances.size()));
+    for (TriggerInstance triggerInstance: triggerInstances) {
+      batch.add(triggerInstance);
+      if (batch.size()==batchSize) {
+        startBatch(workflow, batch, result);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      startBatch(workflow, batch, result);
+    }
+    result.duration = System.currentTimeMillis()-startTime;
+    if (log.isDebugEnabled()) {
+      log.debug("Started "+result.getStartedCount()+" workflow instances in "+result.duration+" millis ("
+              +result.getThroughput()+"/s), "+result.errors.size()+" failed");
+    }
+    return result;
+  }
 
-    return workflowInstance.toWorkflowInstance();
+  protected void startBatch(WorkflowImpl workflow, List<TriggerInstance> batch, BulkStartResult result) {
+    int offset = result.workflowInstanceIds.size();
+    List<WorkflowInstanceId> workflowInstanceIds = new ArrayList<>(batch.size());
+    for (TriggerInstance triggerInstance: batch) {
+      WorkflowInstanceId workflowInstanceId = triggerInstance.getWorkflowInstanceId();
+      workflowInstanceIds.add(workflowInstanceId!=null ? workflowInstanceId : workflowInstanceStore.generateWorkflowInstanceId());
+    }
+    result.workflowInstanceIds.addAll(workflowInstanceIds);
+
+    List<Integer> indexes = new ArrayList<>(batch.size());
+    List<WorkflowInstanceImpl> workflowInstances = new ArrayList<>(batch.size());
+    for (int i=0; i<batch.size(); i++) {
+      WorkflowInstanceId workflowInstanceId = workflowInstanceIds.get(i);
+      try {
+        WorkflowInstanceImpl workflowInstance = startInitialize(batch.get(i), workflow, workflowInstanceId);
+        workflowInstance.isInsertPending = true;
+        startActivities(workflowInstance);
+        workflowInstance.executeSynchronousWork();
+        workflowInstance.isInsertPending = false;
+        if (!workflowInstance.hasAsyncWork()) {
+          // nothing left to do after the insert so the instance is inserted unlocked
+          workflowInstance.removeLock();
+        }
+        notifyInsert(workflowInstance);
+        workflowInstances.add(workflowInstance);
+        indexes.add(offset+i);
+      } catch (RuntimeException e) {
+        log.error("Couldn't start workflow instance "+workflowInstanceId, e);
+        workflowInstanceLocks.unlocked(workflowInstanceId);
+        result.failed(offset+i, e);
+      }
+    }
+
+    Map<Integer, String> insertErrors = workflowInstanceStore.insertWorkflowInstances(workflowInstances);
+    Set<WorkflowInstanceId> insertedIds = new HashSet<>();
+    for (int i=0; i<workflowInstances.size(); i++) {
+      if (!insertErrors.containsKey(i)) {
+        insertedIds.add(workflowInstances.get(i).id);
+      }
+    }
+    for (int i=0; i<workflowInstances.size(); i++) {
+      WorkflowInstanceImpl workflowInstance = workflowInstances.get(i);
+      String insertError = insertErrors.get(i);
+      if (insertError!=null) {
+        // a duplicate of an inserted workflow instance mustn't release the lock of that one
+        if (!insertedIds.contains(workflowInstance.id)) {
+          workflowInstanceLocks.unlocked(workflowInstance.id);
+        }
+        result.failed(indexes.get(i), insertError);
+      } else if (workflowInstance.lock!=null) {
+        workflowInstance.executeWork();
+      } else {
+        workflowInstance.notifyUnlockListeners();
+      }
+    }
   }
 
   public WorkflowId getLatestWorkflowId(TriggerInstance triggerInstance) {
@@ -223,6 +343,116 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
     return send(message, workflowInstance);
   }
 
+  /** sends the message without blocking the calling thread while 
+   * the workflow instance is locked by another thread. */
+  public CompletableFuture<WorkflowInstance> sendAsync(final Message message) {
+    return lockWorkflowInstanceAsync(message.getWorkflowInstanceId())
+      .thenApply(new Function<WorkflowInstanceImpl, WorkflowInstance>() {
+        @Override
+        public WorkflowInstance apply(WorkflowInstanceImpl workflowInstance) {
+          return send(message, workflowInstance);
+        }
+      });
+  }
+
+  @Override
+  public List<MessageResult> sendAll(List<Message> messages) {
+    final List<MessageResult> results = new ArrayList<>();
+    Map<WorkflowInstanceId, List<MessageResult>> groups = new LinkedHashMap<>();
+    for (Message message: messages) {
+      MessageResult result = new MessageResult(message);
+      results.add(result);
+      List<MessageResult> group = groups.get(message.getWorkflowInstanceId());
+      if (group==null) {
+        group = new ArrayList<>();
+        groups.put(message.getWorkflowInstanceId(), group);
+      }
+      group.add(result);
+    }
+    // the calling thread sends groups too and it only waits for the groups that 
+    // the executor has already started.  so this doesn't deadlock when the caller 
+    // is itself a thread of a bounded or saturated executor.
+    final Queue<Map.Entry<WorkflowInstanceId, List<MessageResult>>> pendingGroups = new ConcurrentLinkedQueue<>(groups.entrySet());
+    final CountDownLatch groupsDone = new CountDownLatch(groups.size());
+    Runnable sendPendingGroups = new Runnable() {
+      @Override
+      public void run() {
+        Map.Entry<WorkflowInstanceId, List<MessageResult>> group = pendingGroups.poll();
+        while (group!=null) {
+          try {
+            sendGroup(group.getKey(), group.getValue());
+          } finally {
+            groupsDone.countDown();
+          }
+          group = pendingGroups.poll();
+        }
+      }
+    };
+    for (int i=1; i<groups.size(); i++) {
+      executorService.execute(sendPendingGroups);
+    }
+    sendPendingGroups.run();
+    try {
+      groupsDone.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for messages to be delivered", e);
+    }
+    return results;
+  }
+
+  /** applies all messages for one workflow instance in a single lock cycle.
+   * The {@link FlushMode} is suspended while the messages are applied, so the 
+   * updates of the group are only flushed when the lock cycle completes.  
+   * If applying a message or that flush fails, none of the group's updates 
+   * are saved and all messages in the group are reported as failed. */
+  protected void sendGroup(WorkflowInstanceId workflowInstanceId, List<MessageResult> group) {
+    WorkflowInstanceImpl workflowInstance = null;
+    try {
+      workflowInstance = lockWorkflowInstanceWithRetry(workflowInstanceId);
+      workflowInstance.isFlushDeferred = true;
+      List<MessageResult> delivered = new ArrayList<>();
+      for (MessageResult result: group) {
+        String activityInstanceId = result.getMessage().getActivityInstanceId();
+        ActivityInstanceImpl activityInstance = workflowInstance.findActivityInstance(activityInstanceId);
+        if (activityInstance==null) {
+          result.setError("Activity instance "+activityInstanceId+" not in workflow instance");
+        } else {
+          if (log.isDebugEnabled())
+            log.debug("Signalling "+activityInstance);
+          activityInstance.getActivity().activityType.message(activityInstance, result.getMessage());
+          workflowInstance.executeSynchronousWork();
+          delivered.add(result);
+        }
+      }
+      WorkflowInstanceImpl unlocked = workflowInstance;
+      unlocked.isFlushDeferred = false;
+      // executeWork releases the lock, after a failure there it might 
+      // already belong to someone else so it's not released again
+      workflowInstance = null;
+      // an asynchronous continuation keeps mutating the workflow instance 
+      // after executeWork returns, so in that case the state is captured 
+      // before executeWork starts the continuation
+      WorkflowInstance workflowInstanceAfter = unlocked.hasAsyncWork() ? unlocked.toWorkflowInstance() : null;
+      unlocked.executeWork();
+      if (workflowInstanceAfter==null) {
+        workflowInstanceAfter = unlocked.toWorkflowInstance();
+      }
+      for (MessageResult deliveredResult: delivered) {
+        deliveredResult.setWorkflowInstance(workflowInstanceAfter);
+      }
+    } catch (RuntimeException e) {
+      log.error("Couldn't deliver messages to workflow instance "+workflowInstanceId, e);
+      if (workflowInstance!=null) {
+        workflowInstanceStore.unlockWorkflowInstance(workflowInstance);
+      }
+      for (MessageResult result: group) {
+        result.setWorkflowInstance(null);
+        result.setError(e.getMessage()!=null ? e.getMessage() : e.toString());
+      }
+    }
+  }
+
   /***
    * To manually move a workflowInstance from the current activityInstance to the specified activityInstance.
    * Any "work" in between will not be executed! Will probably be used during testing of your workflows...
@@ -323,30 +553,49 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
 
   @Override
   public List<WorkflowInstance> findWorkflowInstances(WorkflowInstanceQuery query) {
+    if (query!=null && query.getFields()!=null) {
+      return workflowInstanceStore.findWorkflowInstanceSummaries(query);
+    }
     List<WorkflowInstanceImpl> workflowInstances = workflowInstanceStore.findWorkflowInstances(query);
     return WorkflowInstanceImpl.toWorkflowInstances(workflowInstances);
   }
 
+  @Override
+  public QueryIterator<WorkflowInstance> iterateWorkflowInstances(WorkflowInstanceQuery query) {
+    if (query==null) {
+      query = new WorkflowInstanceQuery();
+    }
+    return workflowInstanceStore.iterateWorkflowInstances(query);
+  }
+
   /** retrieves the executable form of the workflow using the workflow cache */
   public WorkflowImpl getWorkflowImpl(WorkflowId workflowId) {
-    WorkflowImpl workflowImpl = workflowCache.get(workflowId);
-    if (workflowImpl==null) {
+    return workflowCache.get(workflowId, workflowLoader);
+  }
+
+  /** parses workflows from the store on workflow cache misses */
+  protected WorkflowCache.Loader workflowLoader = new WorkflowCache.Loader() {
+    @Override
+    public WorkflowImpl load(WorkflowId workflowId) {
       ExecutableWorkflow workflow = workflowStore.loadWorkflowById(workflowId);
-      if (workflow != null) {
-        WorkflowParser parser = new WorkflowParser(configuration);
-        workflowImpl = parser.parse(workflow);
-        workflowCache.put(workflowImpl);
+      if (workflow==null) {
+        return null;
       }
+      WorkflowParser parser = new WorkflowParser(configuration);
+      return parser.parse(workflow);
     }
-    return workflowImpl;
-  }
+  };
 
   public WorkflowInstanceImpl lockWorkflowInstanceWithRetry(
           final WorkflowInstanceId workflowInstanceId) {
     Retry<WorkflowInstanceImpl> retry = new Retry<WorkflowInstanceImpl>() {
       @Override
       public WorkflowInstanceImpl tryOnce() {
-        return workflowInstanceStore.lockWorkflowInstance(workflowInstanceId);
+        WorkflowInstanceImpl workflowInstance = workflowInstanceStore.lockWorkflowInstance(workflowInstanceId);
+        if (workflowInstance!=null) {
+          workflowInstanceLocks.locked(workflowInstanceId);
+        }
+        return workflowInstance;
       }
       @Override
       protected void failedWaitingForRetry() {
@@ -368,6 +617,38 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
     return retry.tryManyTimes();
   }
 
+  /** locks the workflow instance without blocking the calling thread.
+   * If the lock is held by this workflow engine, the request waits till 
+   * the workflow instance is unlocked.  If the lock is held by another 
+   * workflow engine, locking is retried with a jittered backoff.
+   * @see WorkflowInstanceLocks */
+  public CompletableFuture<WorkflowInstanceImpl> lockWorkflowInstanceAsync(WorkflowInstanceId workflowInstanceId) {
+    return workflowInstanceLocks.lock(workflowInstanceId);
+  }
+
+  /** locks the next workflow instance that has jobs due and registers the lock 
+   * so that local lock requests for it wait for the unlock.
+   * @return null if there is no workflow instance with jobs due that can be locked */
+  public WorkflowInstanceImpl lockWorkflowInstanceWithJobsDue() {
+    WorkflowInstanceImpl workflowInstance = workflowInstanceStore.lockWorkflowInstanceWithJobsDue();
+    if (workflowInstance!=null) {
+      workflowInstanceLocks.locked(workflowInstance.id);
+    }
+    return workflowInstance;
+  }
+
+  /** to be called by the stores when a workflow instance is unlocked, 
+   * see {@link WorkflowInstanceImpl#notifyUnlockListeners()}.  Wakes up 
+   * the next local lock request waiting for the workflow instance. */
+  public void unlocked(WorkflowInstanceId workflowInstanceId) {
+    workflowInstanceLocks.unlocked(workflowInstanceId);
+  }
+
+  /** number of local lock requests waiting for the workflow instance to be unlocked */
+  public int getLockWaiterCount(WorkflowInstanceId workflowInstanceId) {
+    return workflowInstanceLocks.getWaiterCount(workflowInstanceId);
+  }
+
   public String getId() {
     return id;
   }
@@ -488,6 +769,7 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
   public VariableValues getVariableValues(WorkflowInstanceId workflowInstanceId, String activityInstanceId) {
     WorkflowInstanceImpl workflowInstance = workflowInstanceStore.getWorkflowInstanceImplById(workflowInstanceId);
     ScopeInstanceImpl scopeInstance = getScopeInstance(workflowInstance, activityInstanceId);
+    Exceptions.checkNotNull(scopeInstance);
     VariableValues variableValues = new VariableValues();
     scopeInstance.collectVariableValues(variableValues);
     return variableValues;
@@ -529,11 +811,12 @@ public class WorkflowEngineImpl implements WorkflowEngine, Brewable {
     workflowInstanceStore.flushAndUnlock(workflowInstance);
   }
 
+  /** null if the workflow instance doesn't contain the activity instance, 
+   * so that the callers can release the lock before they throw */
   protected ScopeInstanceImpl getScopeInstance(WorkflowInstanceImpl workflowInstance, String activityInstanceId) {
     ScopeInstanceImpl scopeInstance = workflowInstance;
     if (activityInstanceId!=null) {
       scopeInstance = workflowInstance.findActivityInstance(activityInstanceId);
-      Exceptions.checkNotNull(scopeInstance);
     }
     return scopeInstance;
   }
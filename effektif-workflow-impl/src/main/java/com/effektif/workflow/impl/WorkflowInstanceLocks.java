@@ -0,0 +1,261 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
+
+
+/** Acquires workflow instance locks without blocking the calling thread.
+ * 
+ * The workflow instances locked by this workflow engine are tracked.  
+ * When a lock attempt fails while this engine holds the lock, the request 
+ * is parked in a per workflow instance queue and it's woken when the 
+ * workflow instance is unlocked, see {@link WorkflowInstanceImpl#notifyUnlockListeners()}.  
+ * Only when the lock is held by another engine, attempts are retried 
+ * with a jittered exponential backoff.
+ * 
+ * @see WorkflowEngineImpl#lockWorkflowInstanceAsync(WorkflowInstanceId)
+ */
+public class WorkflowInstanceLocks {
+  
+  private static final Logger log = WorkflowEngineImpl.log;
+
+  protected WorkflowInstanceStore workflowInstanceStore;
+  protected ExecutorService executorService;
+  protected ScheduledExecutorService retryTimer;
+  protected Random random = new Random();
+
+  /** workflow instances locked by this workflow engine */
+  protected Set<WorkflowInstanceId> localLocks = new HashSet<>();
+  /** lock requests waiting for a workflow instance to be unlocked by this workflow engine */
+  protected Map<WorkflowInstanceId, Queue<LockRequest>> waiters = new HashMap<>();
+
+  // configuration
+  public long backoffWait = 50;
+  public long backoffFactor = 5;
+  public int maxRemoteAttempts = 5;
+  public long localWaitTimeout = 30 * 1000; // 30 seconds
+
+  public WorkflowInstanceLocks(WorkflowInstanceStore workflowInstanceStore, ExecutorService executorService) {
+    this.workflowInstanceStore = workflowInstanceStore;
+    this.executorService = executorService;
+  }
+
+  /** the returned future completes with the locked workflow instance or 
+   * completes exceptionally if the lock couldn't be obtained. */
+  public CompletableFuture<WorkflowInstanceImpl> lock(WorkflowInstanceId workflowInstanceId) {
+    LockRequest lockRequest = new LockRequest(workflowInstanceId);
+    attempt(lockRequest);
+    return lockRequest.future;
+  }
+
+  /** registers a lock that was obtained by this workflow engine outside of {@link #lock(WorkflowInstanceId)} */
+  public synchronized void locked(WorkflowInstanceId workflowInstanceId) {
+    localLocks.add(workflowInstanceId);
+  }
+
+  /** wakes up the next lock request waiting for the given workflow instance */
+  public void unlocked(WorkflowInstanceId workflowInstanceId) {
+    LockRequest next;
+    synchronized (this) {
+      localLocks.remove(workflowInstanceId);
+      next = dequeue(workflowInstanceId);
+    }
+    if (next!=null) {
+      wake(next);
+    }
+  }
+
+  protected void attempt(LockRequest lockRequest) {
+    WorkflowInstanceId workflowInstanceId = lockRequest.workflowInstanceId;
+    WorkflowInstanceImpl workflowInstance = null;
+    try {
+      workflowInstance = workflowInstanceStore.lockWorkflowInstance(workflowInstanceId);
+    } catch (RuntimeException e) {
+      lockRequest.future.completeExceptionally(e);
+      return;
+    }
+    if (workflowInstance!=null) {
+      locked(workflowInstanceId);
+      lockRequest.future.complete(workflowInstance);
+      return;
+    }
+    
+    boolean isParked = false;
+    Queue<LockRequest> orphans = null;
+    synchronized (this) {
+      if (localLocks.contains(workflowInstanceId)) {
+        enqueue(lockRequest);
+        workflowInstanceStore.waitingForLocalUnlock(workflowInstanceId);
+        isParked = true;
+      } else {
+        // the lock is held by another engine so the parked 
+        // requests can't count on a local unlock either
+        orphans = waiters.remove(workflowInstanceId);
+      }
+    }
+    
+    if (isParked) {
+      if (log.isDebugEnabled()) log.debug("Waiting for local unlock of workflow instance "+workflowInstanceId);
+      scheduleTimeout(lockRequest);
+    } else {
+      retryLater(lockRequest);
+      if (orphans!=null) {
+        for (LockRequest orphan: orphans) {
+          cancelTimeout(orphan);
+          retryLater(orphan);
+        }
+      }
+    }
+  }
+
+  protected void wake(final LockRequest lockRequest) {
+    cancelTimeout(lockRequest);
+    executorService.execute(new Runnable() {
+      @Override
+      public void run() {
+        attempt(lockRequest);
+      }
+    });
+  }
+
+  protected void retryLater(final LockRequest lockRequest) {
+    if (lockRequest.remoteAttempts>=maxRemoteAttempts) {
+      lockRequest.future.completeExceptionally(new RuntimeException("Couldn't lock workflow instance " + lockRequest.workflowInstanceId));
+      return;
+    }
+    long wait = backoffWait * (long) Math.pow(backoffFactor, lockRequest.remoteAttempts);
+    // jitter between 50% and 150% of the wait so that competing engines don't retry in lock step
+    wait = wait/2 + (long) (random.nextDouble()*wait);
+    lockRequest.remoteAttempts++;
+    if (log.isDebugEnabled()) log.debug("Locking workflow instance "+lockRequest.workflowInstanceId+" failed... retrying in "+wait+" millis");
+    getRetryTimer().schedule(new Runnable() {
+      @Override
+      public void run() {
+        wake(lockRequest);
+      }
+    }, wait, TimeUnit.MILLISECONDS);
+  }
+
+  protected void scheduleTimeout(final LockRequest lockRequest) {
+    ScheduledFuture<?> timeout = getRetryTimer().schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (remove(lockRequest)) {
+          lockRequest.future.completeExceptionally(new RuntimeException("Timed out waiting for the lock on workflow instance " + lockRequest.workflowInstanceId));
+        }
+      }
+    }, localWaitTimeout, TimeUnit.MILLISECONDS);
+    synchronized (lockRequest) {
+      lockRequest.timeout = timeout;
+    }
+  }
+
+  protected void cancelTimeout(LockRequest lockRequest) {
+    synchronized (lockRequest) {
+      if (lockRequest.timeout!=null) {
+        lockRequest.timeout.cancel(false);
+        lockRequest.timeout = null;
+      }
+    }
+  }
+
+  protected void enqueue(LockRequest lockRequest) {
+    Queue<LockRequest> queue = waiters.get(lockRequest.workflowInstanceId);
+    if (queue==null) {
+      queue = new LinkedList<>();
+      waiters.put(lockRequest.workflowInstanceId, queue);
+    }
+    queue.add(lockRequest);
+  }
+
+  protected LockRequest dequeue(WorkflowInstanceId workflowInstanceId) {
+    Queue<LockRequest> queue = waiters.get(workflowInstanceId);
+    if (queue==null) {
+      return null;
+    }
+    LockRequest next = queue.poll();
+    if (queue.isEmpty()) {
+      waiters.remove(workflowInstanceId);
+    }
+    return next;
+  }
+
+  protected synchronized boolean remove(LockRequest lockRequest) {
+    Queue<LockRequest> queue = waiters.get(lockRequest.workflowInstanceId);
+    if (queue==null || !queue.remove(lockRequest)) {
+      return false;
+    }
+    if (queue.isEmpty()) {
+      waiters.remove(lockRequest.workflowInstanceId);
+    }
+    return true;
+  }
+
+  public synchronized int getWaiterCount(WorkflowInstanceId workflowInstanceId) {
+    Queue<LockRequest> queue = waiters.get(workflowInstanceId);
+    return queue!=null ? queue.size() : 0;
+  }
+
+  protected synchronized ScheduledExecutorService getRetryTimer() {
+    if (retryTimer==null) {
+      retryTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "Workflow instance lock retry timer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return retryTimer;
+  }
+
+  public synchronized void shutdown() {
+    if (retryTimer!=null) {
+      retryTimer.shutdownNow();
+      retryTimer = null;
+    }
+  }
+
+  protected static class LockRequest {
+    WorkflowInstanceId workflowInstanceId;
+    CompletableFuture<WorkflowInstanceImpl> future = new CompletableFuture<>();
+    int remoteAttempts = 0;
+    ScheduledFuture<?> timeout;
+
+    public LockRequest(WorkflowInstanceId workflowInstanceId) {
+      this.workflowInstanceId = workflowInstanceId;
+    }
+  }
+}
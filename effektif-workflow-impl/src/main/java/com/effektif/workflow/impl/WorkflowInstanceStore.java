@@ -16,9 +16,12 @@
 package com.effektif.workflow.impl;
 
 import java.util.List;
+import java.util.Map;
 
 import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.query.QueryIterator;
 import com.effektif.workflow.api.query.WorkflowInstanceQuery;
+import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
 import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
 
 
@@ -28,6 +31,12 @@ public interface WorkflowInstanceStore {
 
   void insertWorkflowInstance(WorkflowInstanceImpl worklflowInstance);
 
+  /** inserts a batch of workflow instances, failures of individual inserts 
+   * don't prevent the others from being inserted. 
+   * @return the insert error messages by index in the given list, empty if all were inserted. 
+   *   Indexes are used because the same workflow instance id can occur more than once. */
+  Map<Integer, String> insertWorkflowInstances(List<WorkflowInstanceImpl> workflowInstances);
+
   /** used when rendering a form */
   WorkflowInstanceImpl getWorkflowInstanceImplById(WorkflowInstanceId workflowInstanceId);
 
@@ -35,6 +44,10 @@ public interface WorkflowInstanceStore {
 
   WorkflowInstanceImpl lockWorkflowInstanceWithJobsDue();
 
+  /** called when a lock attempt that failed because this engine holds the lock 
+   * waits till the workflow instance is unlocked by this engine. */
+  void waitingForLocalUnlock(WorkflowInstanceId workflowInstanceId);
+
   void flush(WorkflowInstanceImpl workflowInstance);
 
   void flushAndUnlock(WorkflowInstanceImpl workflowInstance);
@@ -43,6 +56,15 @@ public interface WorkflowInstanceStore {
 
   List<WorkflowInstanceImpl> findWorkflowInstances(WorkflowInstanceQuery workflowInstanceQuery);
 
+  /** finds the workflow instances for a query with {@link WorkflowInstanceQuery#getFields() fields} 
+   * without building the executable {@link WorkflowInstanceImpl}s. Only the requested fields 
+   * have to be filled in. */
+  List<WorkflowInstance> findWorkflowInstanceSummaries(WorkflowInstanceQuery workflowInstanceQuery);
+
+  /** fetches the workflow instances in {@link WorkflowInstanceQuery#getBatchSize() batches} 
+   * while iterating.  Queries with {@link WorkflowInstanceQuery#getFields() fields} produce summaries. */
+  QueryIterator<WorkflowInstance> iterateWorkflowInstances(WorkflowInstanceQuery workflowInstanceQuery);
+
   void deleteWorkflowInstances(WorkflowInstanceQuery workflowInstanceQuery);
 
   void deleteAllWorkflowInstances();
@@ -26,6 +26,7 @@ import com.effektif.workflow.api.activities.ExclusiveGateway;
 import com.effektif.workflow.impl.WorkflowEngineImpl;
 import com.effektif.workflow.impl.WorkflowParser;
 import com.effektif.workflow.impl.activity.AbstractActivityType;
+import com.effektif.workflow.impl.conditions.ConditionContext;
 import com.effektif.workflow.impl.conditions.ConditionService;
 import com.effektif.workflow.impl.workflow.ActivityImpl;
 import com.effektif.workflow.impl.workflow.TransitionImpl;
@@ -102,9 +103,11 @@ public class ExclusiveGatewayImpl extends AbstractActivityType<ExclusiveGateway>
 
   protected TransitionImpl findFirstTransitionThatMeetsCondition(ActivityInstanceImpl activityInstance, List<TransitionImpl> outgoingTransitions) {
     if (outgoingTransitions != null) {
+      // all conditions share the variable values resolved by the previous ones
+      ConditionContext conditionContext = new ConditionContext(activityInstance);
       for (TransitionImpl outgoingTransition: outgoingTransitions) {
         // condition must be true and the transition must have a target
-        if (meetsCondition(outgoingTransition, activityInstance)) {
+        if (meetsCondition(outgoingTransition, conditionContext)) {
           log.debug("Excl gw takes transition "+outgoingTransition);
           return outgoingTransition;
         } else {
@@ -115,10 +118,10 @@ public class ExclusiveGatewayImpl extends AbstractActivityType<ExclusiveGateway>
     return null;
   }
 
-  protected boolean meetsCondition(TransitionImpl outgoingTransition, ActivityInstanceImpl activityInstance) {
+  protected boolean meetsCondition(TransitionImpl outgoingTransition, ConditionContext conditionContext) {
     boolean meetsCondition = false;
     if (outgoingTransition.condition!=null) {
-      meetsCondition = outgoingTransition.condition.eval(activityInstance);
+      meetsCondition = outgoingTransition.condition.eval(conditionContext);
     }
     return meetsCondition;
   }
@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
@@ -33,8 +35,10 @@ import javax.xml.validation.Validator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
 import com.effektif.workflow.impl.bpmn.xml.XmlParsingError;
 
@@ -55,28 +59,53 @@ public class Bpmn {
   public static final String KEY_BPMN = "bpmn";
   public static final String KEY_DEFINITIONS = "bpmnDefinitions";
 
+  /** the compiled schema is thread safe so it's only compiled once per JVM */
+  private static volatile Schema bpmnSchema;
+  /** validators are not thread safe, so they are reused one thread at a time */
+  private static final Queue<Validator> validators = new ConcurrentLinkedQueue<>();
+  /** validators returned while this many are idle are discarded */
+  private static final int MAX_IDLE_VALIDATORS = 8;
+  private static final SAXParserFactory saxParserFactory = createSaxParserFactory();
+
   /**
-   * Validates the given BPMN XML document. The document is first parsed without schema validation, to be able to report
-   * XML syntax (not well-formed) errors separately from BPMN schema validation errors.
+   * Validates the given BPMN XML document in a single streaming pass. XML syntax (not well-formed) errors 
+   * are still reported separately from BPMN schema validation errors.
+   * 
+   * @throws XmlParsingError if the document is not well-formed XML
+   * @throws BpmnSchemaValidationError if the document is not valid BPMN 2.0
    */
   public static void validate(String bpmnDocument) {
     if (bpmnDocument == null) {
       throw new IllegalArgumentException("null bpmnDocument");
     }
 
-    validateWellFormed(bpmnDocument);
-    validateSchema(bpmnDocument);
+    Validator validator = borrowValidator();
+    ValidationErrorHandler errorHandler = new ValidationErrorHandler();
+    validator.setErrorHandler(errorHandler);
+    try {
+      validator.validate(new StreamSource(new StringReader(bpmnDocument)));
+    } catch (SAXException e) {
+      throw new XmlParsingError(e);
+    } catch (IOException e) {
+      throw new RuntimeException("IOException during BPMN XML validation: " + e.getMessage());
+    } finally {
+      returnValidator(validator);
+    }
+    if (errorHandler.schemaError != null) {
+      throw new BpmnSchemaValidationError(errorHandler.schemaError);
+    }
   }
 
   /**
    * Uses the SAX parser to parse the given XML to check that it is well-formed, discarding the result.
    */
   public static void validateWellFormed(String xmlDocument) {
-    SAXParserFactory factory = SAXParserFactory.newInstance();
-    factory.setValidating(false);
-    factory.setNamespaceAware(true);
     try {
-      SAXParser parser = factory.newSAXParser();
+      SAXParser parser;
+      // the factory is configured once but isn't guaranteed to be thread safe
+      synchronized (saxParserFactory) {
+        parser = saxParserFactory.newSAXParser();
+      }
       InputSource xml = new InputSource(new StringReader(xmlDocument));
       parser.getXMLReader().parse(xml);
     } catch (ParserConfigurationException e) {
@@ -94,26 +123,83 @@ public class Bpmn {
    * @throws BpmnSchemaValidationError if the document is not valid BPMN 2.0
    */
   public static void validateSchema(String bpmnDocument) {
+    Source xml = new StreamSource(new StringReader(bpmnDocument));
+    Validator validator = borrowValidator();
+    validator.setErrorHandler(null);
+    try {
+      validator.validate(xml);
+    } catch (SAXException e) {
+      throw new BpmnSchemaValidationError(e);
+    } catch (IOException e) {
+      throw new RuntimeException("IOException during BPMN XML validation: " + e.getMessage());
+    } finally {
+      returnValidator(validator);
+    }
+  }
+
+  /** the BPMN 2.0 schema, including its imports, compiled on first use */
+  public static Schema getBpmnSchema() {
+    if (bpmnSchema == null) {
+      synchronized (Bpmn.class) {
+        if (bpmnSchema == null) {
+          bpmnSchema = compileBpmnSchema();
+        }
+      }
+    }
+    return bpmnSchema;
+  }
+
+  private static Schema compileBpmnSchema() {
     InputStream schemaStream = Bpmn.class.getResourceAsStream("/xsd/BPMN20.xsd");
     Source schemaSource = new StreamSource(new BufferedReader(new InputStreamReader(schemaStream)));
-
-    Source xml = new StreamSource(new StringReader(bpmnDocument));
     SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
     schemaFactory.setResourceResolver(new ClasspathResourceResolver("xsd/"));
-    Schema schema = null;
     try {
-      schema = schemaFactory.newSchema(schemaSource);
+      return schemaFactory.newSchema(schemaSource);
     } catch (SAXException e) {
       log.error("Error parsing schema:\n" + schemaSource.toString(), e);
       throw new RuntimeException("Error parsing schema: " + e.getMessage());
     }
-    try {
-      Validator validator = schema.newValidator();
-      validator.validate(xml);
-    } catch (SAXException e) {
-      throw new BpmnSchemaValidationError(e);
-    } catch (IOException e) {
-      throw new RuntimeException("IOException during BPMN XML validation: " + e.getMessage());
+  }
+
+  private static Validator borrowValidator() {
+    Validator validator = validators.poll();
+    return validator != null ? validator : getBpmnSchema().newValidator();
+  }
+
+  private static void returnValidator(Validator validator) {
+    // the size of a small concurrent queue is cheap enough to count, 
+    // concurrent returns can overshoot the max by a few
+    if (validators.size() < MAX_IDLE_VALIDATORS) {
+      validator.reset();
+      validators.offer(validator);
+    }
+  }
+
+  private static SAXParserFactory createSaxParserFactory() {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setValidating(false);
+    factory.setNamespaceAware(true);
+    return factory;
+  }
+
+  /** the parser reports well-formedness errors as fatal errors and schema validity 
+   * errors as (recoverable) errors.  Parsing continues after the first schema error 
+   * so that well-formedness errors still take precedence, like with separate passes. */
+  private static class ValidationErrorHandler implements ErrorHandler {
+    SAXParseException schemaError;
+    @Override
+    public void warning(SAXParseException exception) {
+    }
+    @Override
+    public void error(SAXParseException exception) {
+      if (schemaError == null) {
+        schemaError = exception;
+      }
+    }
+    @Override
+    public void fatalError(SAXParseException exception) throws SAXException {
+      throw exception;
     }
   }
 }
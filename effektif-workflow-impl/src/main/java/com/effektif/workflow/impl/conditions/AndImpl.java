@@ -45,8 +45,13 @@ public class AndImpl implements ConditionImpl<And> {
 
   @Override
   public boolean eval(ScopeInstanceImpl scopeInstance) {
+    return eval(new ConditionContext(scopeInstance));
+  }
+
+  @Override
+  public boolean eval(ConditionContext conditionContext) {
     for (ConditionImpl condition: conditions) {
-      if (!condition.eval(scopeInstance)) {
+      if (!condition.eval(conditionContext)) {
         return false;
       }
     }
@@ -31,15 +31,19 @@ public abstract class ComparatorImpl implements ConditionImpl<Comparator> {
   
   protected BindingImpl<?> left;
   protected BindingImpl<?> right;
+  /** typed values of literal bindings, created once so that evaluation doesn't allocate them */
+  protected TypedValueImpl leftLiteral;
+  protected TypedValueImpl rightLiteral;
 
   public BindingImpl<?> getLeft() {
     return this.left;
   }
   public void setLeft(BindingImpl<?> left) {
     this.left = left;
+    this.leftLiteral = getLiteral(left);
   }
   public ComparatorImpl left(BindingImpl<?> left) {
-    this.left = left;
+    setLeft(left);
     return this;
   }
 
@@ -48,18 +52,31 @@ public abstract class ComparatorImpl implements ConditionImpl<Comparator> {
   }
   public void setRight(BindingImpl<?> right) {
     this.right = right;
+    this.rightLiteral = getLiteral(right);
   }
   public ComparatorImpl right(BindingImpl<?> right) {
-    this.right = right;
+    setRight(right);
     return this;
   }
+
+  protected static TypedValueImpl getLiteral(BindingImpl<?> binding) {
+    if (binding==null || binding.value==null) {
+      return null;
+    }
+    return new TypedValueImpl(binding.type, binding.value);
+  }
   
   @Override
   public boolean eval(ScopeInstanceImpl scopeInstance) {
-    TypedValueImpl leftTypedValue = scopeInstance.getTypedValue(left);
-    TypedValueImpl rightTypedValue = scopeInstance.getTypedValue(right);
+    return eval(new ConditionContext(scopeInstance));
+  }
+
+  @Override
+  public boolean eval(ConditionContext conditionContext) {
+    TypedValueImpl leftTypedValue = leftLiteral!=null ? leftLiteral : conditionContext.getTypedValue(left);
+    TypedValueImpl rightTypedValue = rightLiteral!=null ? rightLiteral : conditionContext.getTypedValue(right);
     
-    return compare(leftTypedValue, rightTypedValue, scopeInstance);
+    return compare(leftTypedValue, rightTypedValue, conditionContext.getScopeInstance());
   }
 
   public static boolean isNotNull(TypedValueImpl typedValue) {
@@ -74,8 +91,8 @@ public abstract class ComparatorImpl implements ConditionImpl<Comparator> {
   
   @Override
   public void parse(Comparator comparator, ConditionService conditionService, WorkflowParser parser) {
-    this.left = parser.parseBinding(comparator.getLeft(), "left");
-    this.right = parser.parseBinding(comparator.getRight(), "right");
+    setLeft(parser.parseBinding(comparator.getLeft(), "left"));
+    setRight(parser.parseBinding(comparator.getRight(), "right"));
   }
   
   public String toString() {
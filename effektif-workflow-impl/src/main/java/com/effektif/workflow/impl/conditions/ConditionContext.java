@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl.conditions;
+
+import java.util.Arrays;
+
+import com.effektif.workflow.impl.data.TypedValueImpl;
+import com.effektif.workflow.impl.workflow.BindingImpl;
+import com.effektif.workflow.impl.workflow.ExpressionImpl;
+import com.effektif.workflow.impl.workflowinstance.ScopeInstanceImpl;
+
+
+/**
+ * Resolves the bindings of conditions that are evaluated together against one 
+ * scope instance, like the outgoing transitions of an exclusive gateway.
+ * 
+ * Each distinct expression is looked up in the scope instance hierarchy only once. 
+ * Conditions that refer to the same variable (and fields) get the same typed value.
+ * A context must not be used anymore after variables have been updated.
+ */
+public class ConditionContext {
+  
+  protected ScopeInstanceImpl scopeInstance;
+  
+  /** resolved expressions and their typed values, with the same index. 
+   * a gateway typically refers to a handful of variables, so a linear scan is cheapest. */
+  protected ExpressionImpl[] expressions;
+  protected TypedValueImpl[] typedValues;
+  protected int resolved = 0;
+
+  public ConditionContext(ScopeInstanceImpl scopeInstance) {
+    this.scopeInstance = scopeInstance;
+  }
+
+  public TypedValueImpl getTypedValue(BindingImpl<?> binding) {
+    if (binding==null) {
+      return null;
+    }
+    if (binding.value!=null) {
+      return new TypedValueImpl(binding.type, binding.value);
+    }
+    if (binding.expression!=null) {
+      return getTypedValue(binding.expression);
+    }
+    return null;
+  }
+
+  public Object getValue(BindingImpl<?> binding) {
+    if (binding==null) {
+      return null;
+    }
+    if (binding.value!=null) {
+      return binding.value;
+    }
+    if (binding.expression!=null) {
+      TypedValueImpl typedValue = getTypedValue(binding.expression);
+      return typedValue!=null ? typedValue.value : null;
+    }
+    return null;
+  }
+
+  public TypedValueImpl getTypedValue(ExpressionImpl expression) {
+    for (int i=0; i<resolved; i++) {
+      if (isSameExpression(expressions[i], expression)) {
+        return typedValues[i];
+      }
+    }
+    TypedValueImpl typedValue = scopeInstance.getTypedValue(expression);
+    if (expressions==null) {
+      expressions = new ExpressionImpl[4];
+      typedValues = new TypedValueImpl[4];
+    } else if (resolved==expressions.length) {
+      expressions = Arrays.copyOf(expressions, resolved*2);
+      typedValues = Arrays.copyOf(typedValues, resolved*2);
+    }
+    expressions[resolved] = expression;
+    typedValues[resolved] = typedValue;
+    resolved++;
+    return typedValue;
+  }
+
+  protected static boolean isSameExpression(ExpressionImpl resolvedExpression, ExpressionImpl expression) {
+    if (resolvedExpression==expression) {
+      return true;
+    }
+    return resolvedExpression.variableId!=null
+           && resolvedExpression.variableId.equals(expression.variableId)
+           && (resolvedExpression.fieldKeys!=null 
+               ? resolvedExpression.fieldKeys.equals(expression.fieldKeys) 
+               : expression.fieldKeys==null);
+  }
+
+  public ScopeInstanceImpl getScopeInstance() {
+    return scopeInstance;
+  }
+}
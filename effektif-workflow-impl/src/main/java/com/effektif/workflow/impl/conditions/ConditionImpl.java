@@ -29,5 +29,11 @@ public interface ConditionImpl<T> {
 
   boolean eval(ScopeInstanceImpl scopeInstance);
 
+  /** evaluates with the variable values that are already resolved in the given context.
+   * Conditions that don't reuse the resolved values evaluate against the scope instance. */
+  default boolean eval(ConditionContext conditionContext) {
+    return eval(conditionContext.getScopeInstance());
+  }
+
   void parse(T condition, ConditionService conditionService, WorkflowParser parser);
 }
@@ -46,7 +46,12 @@ public class NotImpl implements ConditionImpl<Not> {
 
   @Override
   public boolean eval(ScopeInstanceImpl scopeInstance) {
-    return !condition.eval(scopeInstance);
+    return eval(new ConditionContext(scopeInstance));
+  }
+
+  @Override
+  public boolean eval(ConditionContext conditionContext) {
+    return !condition.eval(conditionContext);
   }
 
   @Override
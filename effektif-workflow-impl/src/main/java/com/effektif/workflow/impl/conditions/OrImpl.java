@@ -45,11 +45,16 @@ public class OrImpl implements ConditionImpl<Or> {
 
   @Override
   public boolean eval(ScopeInstanceImpl scopeInstance) {
+    return eval(new ConditionContext(scopeInstance));
+  }
+
+  @Override
+  public boolean eval(ConditionContext conditionContext) {
     if (conditions==null || conditions.isEmpty()) {
       return true;
     }
     for (ConditionImpl condition: conditions) {
-      if (condition.eval(scopeInstance)) {
+      if (condition.eval(conditionContext)) {
         return true;
       }
     }
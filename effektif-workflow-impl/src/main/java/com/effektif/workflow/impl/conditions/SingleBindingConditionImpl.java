@@ -44,6 +44,12 @@ public abstract class SingleBindingConditionImpl<T extends SingleBindingConditio
     Object value = scopeInstance.getValue(left);
     return eval(value);
   }
+
+  @Override
+  public boolean eval(ConditionContext conditionContext) {
+    Object value = conditionContext.getValue(left);
+    return eval(value);
+  }
   
   protected abstract boolean eval(Object value);
   
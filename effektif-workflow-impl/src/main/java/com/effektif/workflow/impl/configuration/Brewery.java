@@ -144,7 +144,10 @@ public class Brewery {
     }
     o = ingredients.get(name);
     if (o!=null) {
-      brew(o);
+      // ingredients were aliased when they were registered.  brewing them under 
+      // their name keeps ingredients that are registered by name only from 
+      // being aliased by their type as a side effect of looking them up.
+      brew(o, name);
       // log.debug("returning brewed("+name+") "+System.identityHashCode(o));
       return o;
     } 
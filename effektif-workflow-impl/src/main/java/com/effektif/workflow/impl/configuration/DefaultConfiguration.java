@@ -21,8 +21,10 @@ import com.effektif.workflow.api.Configuration;
 import com.effektif.workflow.api.WorkflowEngine;
 import com.effektif.workflow.impl.AsynchronousExecutorService;
 import com.effektif.workflow.impl.ConditionServiceImpl;
+import com.effektif.workflow.impl.ExecutorService;
 import com.effektif.workflow.impl.SimpleWorkflowCache;
 import com.effektif.workflow.impl.SynchronousExecutorService;
+import com.effektif.workflow.impl.ThreadPerTaskExecutorService;
 import com.effektif.workflow.impl.WorkflowEngineConfiguration;
 import com.effektif.workflow.impl.WorkflowEngineImpl;
 import com.effektif.workflow.impl.activity.ActivityTypeService;
@@ -84,6 +86,23 @@ public abstract class DefaultConfiguration implements Configuration {
     return this;
   }
 
+  /** executes asynchronous work and jobs each in their own virtual thread if available, 
+   * otherwise on a pool of platform threads, with at most maxConcurrency of them 
+   * executing at the same time. */
+  public DefaultConfiguration threadPerTask(int maxConcurrency) {
+    brewery.ingredient(new ThreadPerTaskExecutorService(maxConcurrency));
+    return this;
+  }
+
+  /** executes the jobs on a separate pool instead of on the 
+   * executor that runs the asynchronous workflow continuations.
+   * The pool is registered by name only so that it never replaces 
+   * the {@link ExecutorService} and it is shut down with the workflow engine. */
+  public DefaultConfiguration jobExecutorService(ExecutorService jobExecutorService) {
+    brewery.ingredient(jobExecutorService, JobServiceImpl.JOB_EXECUTOR_SERVICE);
+    return this;
+  }
+
   public Brewery getBrewery() {
     return brewery;
   }
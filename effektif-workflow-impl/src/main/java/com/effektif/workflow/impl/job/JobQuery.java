@@ -25,6 +25,7 @@ public class JobQuery {
 
   protected String jobId;
   protected WorkflowId workflowId;
+  protected Integer batchSize;
 
   public String getJobId() {
     return this.jobId;
@@ -50,6 +51,19 @@ public class JobQuery {
     return this;
   }
 
+  public Integer getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(Integer batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public JobQuery batchSize(Integer batchSize) {
+    this.batchSize = batchSize;
+    return this;
+  }
+
   public boolean meetsCriteria(Job job) {
     if (jobId!=null && !jobId.equals(job.id) || workflowId != null && !workflowId.equals(job.workflowId)) {
       return false;
@@ -17,9 +17,15 @@ package com.effektif.workflow.impl.job;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.effektif.workflow.impl.configuration.Startable;
 
@@ -28,10 +34,16 @@ import org.slf4j.LoggerFactory;
 
 import com.effektif.workflow.api.Configuration;
 import com.effektif.workflow.impl.ExecutorService;
+import com.effektif.workflow.impl.WorkflowEngineImpl;
+import com.effektif.workflow.impl.WorkflowExecutionListener;
 import com.effektif.workflow.impl.WorkflowInstanceStore;
 import com.effektif.workflow.impl.configuration.Brewable;
 import com.effektif.workflow.impl.configuration.Brewery;
+import com.effektif.workflow.impl.metrics.Histogram;
+import com.effektif.workflow.impl.metrics.MetricsRegistry;
 import com.effektif.workflow.impl.util.Time;
+import com.effektif.workflow.impl.workflow.TransitionImpl;
+import com.effektif.workflow.impl.workflowinstance.ActivityInstanceImpl;
 import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
 
 
@@ -41,21 +53,58 @@ import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
 public class JobServiceImpl implements JobService, Brewable {
   
   private static final Logger log = LoggerFactory.getLogger(JobServiceImpl.class);
+
+  /** name of an optional {@link ExecutorService} ingredient that executes the jobs 
+   * so that they don't compete with the asynchronous workflow continuations. */
+  public static final String JOB_EXECUTOR_SERVICE = "jobExecutorService";
+  /** name of the claim-to-start latency histogram when a {@link MetricsRegistry} is configured */
+  public static final String JOBS_CLAIM_TO_START = "jobs.claimToStart";
   
   protected Configuration configuration;
   protected JobStore jobStore;
   protected WorkflowInstanceStore workflowInstanceStore;
   protected ExecutorService executor;
+  protected WorkflowEngineImpl workflowEngine;
 
   // configuration 
+  /** millis between the polls.  Polling is what picks up the jobs of other engines 
+   * and the jobs that are due after the next poll, so a longer interval delays 
+   * those by up to the same amount.  Hence the default stays at 30 seconds, 
+   * even though the jobs saved by this engine don't need polling. */
   public long checkInterval = 30 * 1000; // 30 seconds
   public int maxJobExecutions = 5;
+  /** max number of jobs that are locked with a single store call.  
+   * The actual batch is reduced by the number of tasks waiting in the executor queue. */
+  public int maxJobClaimBatchSize = 100;
+  /** jobs are not claimed any more when this many tasks are waiting in the executor queue 
+   * so that jobs aren't locked long before they're executed */
+  public int jobQueueHighWaterMark = 200;
+  /** claiming resumes when the executor queue has drained to this many waiting tasks */
+  public int jobQueueLowWaterMark = 20;
+  /** besides polling every checkInterval, the checks are scheduled on the timer 
+   * for the due dates of the jobs that are saved by this engine, so that those are 
+   * executed when they are due.  Polling still picks up the jobs of other engines. */
+  public boolean isSchedulingDueJobs = true;
+  /** only jobs that are due before the next poll get a scheduled check, 
+   * when this many checks are scheduled the other jobs are left to polling as well */
+  public int maxScheduledChecks = 1000;
+  /** due dates are rounded up to this many milliseconds so that 
+   * jobs that are due at nearly the same time share a check */
+  public long scheduledCheckResolution = 50;
 
   // runtime state
   public boolean isRunning = false;
   public Timer timer = null;
+  protected Set<Long> scheduledWorkflowInstanceChecks = ConcurrentHashMap.newKeySet();
+  protected Set<Long> scheduledJobChecks = ConcurrentHashMap.newKeySet();
+  protected WorkflowExecutionListener dueJobsListener = null;
+  protected volatile boolean isClaimingPaused = false;
+  /** millis between locking a job and the start of its execution */
+  protected Histogram claimToStartLatency = new Histogram();
 //  public Timer checkOtherJobsTimer = null;
   public JobServiceListener listener = null;
+  /** tasks that run on the timer next to the checks, mapped to their period in millis */
+  protected Map<Runnable,Long> periodicTasks = new LinkedHashMap<>();
 
   private static JobServiceImpl jobServiceImpl = null;
 
@@ -63,8 +112,14 @@ public class JobServiceImpl implements JobService, Brewable {
   public void brew(Brewery brewery) {
     this.configuration = brewery.get(Configuration.class);
     this.workflowInstanceStore = brewery.get(WorkflowInstanceStore.class);
-    this.executor = brewery.get(ExecutorService.class);
+    ExecutorService jobExecutorService = (ExecutorService) brewery.getOpt(JOB_EXECUTOR_SERVICE);
+    this.executor = jobExecutorService!=null ? jobExecutorService : brewery.get(ExecutorService.class);
     this.jobStore = brewery.get(JobStore.class);
+    this.workflowEngine = brewery.get(WorkflowEngineImpl.class);
+    MetricsRegistry metricsRegistry = brewery.getOpt(MetricsRegistry.class);
+    if (metricsRegistry!=null) {
+      this.claimToStartLatency = metricsRegistry.histogram(JOBS_CLAIM_TO_START);
+    }
   }
 
   public JobServiceImpl () {
@@ -83,19 +138,17 @@ public class JobServiceImpl implements JobService, Brewable {
       
       timer = new Timer("Job executor timer");
 
-      keepDoing(new Runnable() {
-        @Override
-        public void run() {
-          checkWorkflowInstanceJobs();
-        }
-      }, 100, checkInterval);
+      keepDoing(checkWorkflowInstanceJobsRunnable, 100, checkInterval);
+      keepDoing(checkJobsRunnable, 500, checkInterval);
+      for (Map.Entry<Runnable,Long> periodicTask: periodicTasks.entrySet()) {
+        keepDoing(periodicTask.getKey(), 0, periodicTask.getValue());
+      }
 
-      keepDoing(new Runnable() {
-        @Override
-        public void run() {
-          checkJobs();
-        }
-      }, 500, checkInterval);
+      if (isSchedulingDueJobs) {
+        // workflow instance jobs can only be locked after the workflow instance is unlocked 
+        dueJobsListener = new DueJobsListener();
+        workflowEngine.addWorkflowExecutionListener(dueJobsListener);
+      }
 
       isRunning = true;
 
@@ -103,6 +156,16 @@ public class JobServiceImpl implements JobService, Brewable {
     }
   }
   
+  /** executes the given task on the executor every period millis while 
+   * the job service is running.  Stores use this for housekeeping that 
+   * has to happen even when no jobs are polled, like renewing leases. */
+  public synchronized void addPeriodicTask(Runnable task, long period) {
+    periodicTasks.put(task, period);
+    if (isRunning) {
+      keepDoing(task, 0, period);
+    }
+  }
+
   /** Repeatedly executes the given doable until this job executor is shutdown.
    * It uses the process engine executor service to execute the doable.
    * We use a single timer object.  As each timer uses it's own thread, we ensure 
@@ -118,21 +181,118 @@ public class JobServiceImpl implements JobService, Brewable {
     }, delay, period);
   }
 
+  protected Runnable checkWorkflowInstanceJobsRunnable = new Runnable() {
+    @Override
+    public void run() {
+      checkWorkflowInstanceJobs();
+    }
+  };
+
+  protected Runnable checkJobsRunnable = new Runnable() {
+    @Override
+    public void run() {
+      checkJobs();
+    }
+  };
+
   public void shutdown() {
     isRunning = false;
+    if (dueJobsListener!=null) {
+      workflowEngine.removeWorkflowExecutionListener(dueJobsListener);
+      dueJobsListener = null;
+    }
     timer.cancel();
     timer.purge();
+    scheduledWorkflowInstanceChecks.clear();
+    scheduledJobChecks.clear();
     executor.shutdown();
   }
 
+  /** schedules a check on the timer for when the given job is due.
+   * Jobs that are due at (nearly) the same time share one check. 
+   * Jobs that are due after the next poll are left to polling so that 
+   * far future jobs don't take up the scheduled checks. */
+  public void scheduleCheck(Job job) {
+    if (!isSchedulingDueJobs || !isRunning || timer==null || job==null || job.dueDate==null) {
+      return;
+    }
+    long dueTime = job.dueDate.toDate().getTime();
+    if (dueTime > System.currentTimeMillis() + checkInterval) {
+      return;
+    }
+    final Long checkTime = ((dueTime + scheduledCheckResolution - 1) / scheduledCheckResolution) * scheduledCheckResolution;
+    final Set<Long> scheduledChecks = job.workflowInstanceId!=null ? scheduledWorkflowInstanceChecks : scheduledJobChecks;
+    final Runnable check = job.workflowInstanceId!=null ? checkWorkflowInstanceJobsRunnable : checkJobsRunnable;
+    if (scheduledChecks.size()>=maxScheduledChecks || !scheduledChecks.add(checkTime)) {
+      return;
+    }
+    try {
+      // checks for due dates in the past are executed right away
+      timer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          scheduledChecks.remove(checkTime);
+          executor.execute(check);
+        }
+      }, new Date(checkTime));
+    } catch (IllegalStateException e) {
+      // the timer was cancelled by a shutdown
+      scheduledChecks.remove(checkTime);
+    }
+  }
+
+  protected void scheduleChecks(WorkflowInstanceImpl workflowInstance) {
+    if (workflowInstance.jobs!=null) {
+      for (Job job: workflowInstance.jobs) {
+        scheduleCheck(job);
+      }
+    }
+  }
+
+  /** schedules the checks for the jobs of workflow instances when they become available for locking */
+  class DueJobsListener implements WorkflowExecutionListener {
+    @Override
+    public void unlocked(WorkflowInstanceImpl workflowInstance) {
+      scheduleChecks(workflowInstance);
+    }
+    @Override
+    public void starting(WorkflowInstanceImpl workflowInstance) {
+    }
+    @Override
+    public boolean starting(ActivityInstanceImpl activityInstance) {
+      return true;
+    }
+    @Override
+    public void ended(ActivityInstanceImpl activityInstance) {
+    }
+    @Override
+    public void ended(WorkflowInstanceImpl workflowInstance) {
+    }
+    @Override
+    public boolean transitioning(ActivityInstanceImpl from, TransitionImpl transition, ActivityInstanceImpl to) {
+      return true;
+    }
+    @Override
+    public void flush(WorkflowInstanceImpl workflowInstance) {
+    }
+    @Override
+    public void insert(WorkflowInstanceImpl workflowInstance) {
+    }
+  }
+
   public boolean isRunning() {
     return isRunning;
   }
 
+  /** number of checks that are scheduled on the timer and not yet executed */
+  public int getScheduledCheckCount() {
+    return scheduledWorkflowInstanceChecks.size() + scheduledJobChecks.size();
+  }
+
   public void checkWorkflowInstanceJobs() {
     boolean keepGoing = true;
-    while (isRunning && keepGoing) {
-      WorkflowInstanceImpl lockedProcessInstance = workflowInstanceStore.lockWorkflowInstanceWithJobsDue();
+    while (isRunning && keepGoing && isClaimingAllowed()) {
+      WorkflowInstanceImpl lockedProcessInstance = workflowEngine.lockWorkflowInstanceWithJobsDue();
       if (lockedProcessInstance!=null) {
         executor.execute(new ExecuteWorkflowInstanceJobs(lockedProcessInstance));
       } else {
@@ -151,11 +311,20 @@ public class JobServiceImpl implements JobService, Brewable {
   class ExecuteWorkflowInstanceJobs implements Runnable {
     JobServiceImpl jobService;
     WorkflowInstanceImpl workflowInstance;
+    long claimTime = System.currentTimeMillis();
     public ExecuteWorkflowInstanceJobs(WorkflowInstanceImpl workflowInstance) {
       this.workflowInstance = workflowInstance;
     }
     @Override
     public void run() {
+      claimToStartLatency.record(System.currentTimeMillis()-claimTime);
+      try {
+        executeWorkflowInstanceJobs();
+      } finally {
+        resumeClaimingIfDrained();
+      }
+    }
+    protected void executeWorkflowInstanceJobs() {
       log.debug("Executing jobs for workflow instance "+workflowInstance.id);
       Job[] jobsArray = new Job[workflowInstance.jobs.size()];
 
@@ -180,34 +349,86 @@ public class JobServiceImpl implements JobService, Brewable {
         }
       }
       workflowInstanceStore.flushAndUnlock(workflowInstance);
+      // rescheduled jobs
+      scheduleChecks(workflowInstance);
     }
   }
 
   public void checkJobs() {
     boolean keepGoing = true;
-    while (isRunning && keepGoing) {
-      Job job = jobStore.lockNextJob();
-      if (job != null) {
+    while (isRunning && keepGoing && isClaimingAllowed()) {
+      int batchSize = getJobClaimBatchSize();
+      List<Job> jobs = jobStore.lockNextJobs(batchSize);
+      for (Job job: jobs) {
         executor.execute(new ExecuteJob(job));
-      } else {
-        keepGoing = false;
       }
+      // a partial batch means there are no more due jobs
+      keepGoing = jobs.size()==batchSize;
+    }
+  }
+
+  /** the claim batch shrinks as the executor queue fills up so that 
+   * locked jobs don't wait in the queue while other engines could execute them */
+  protected int getJobClaimBatchSize() {
+    return Math.max(1, maxJobClaimBatchSize - executor.getQueueDepth());
+  }
+
+  /** admission control with hysteresis: claiming stops when the executor queue 
+   * reaches the high water mark and only resumes below the low water mark */
+  protected boolean isClaimingAllowed() {
+    int queueDepth = executor.getQueueDepth();
+    if (isClaimingPaused) {
+      if (queueDepth<=jobQueueLowWaterMark) {
+        isClaimingPaused = false;
+      }
+    } else if (queueDepth>=jobQueueHighWaterMark) {
+      log.debug("Executor queue depth "+queueDepth+" reached the high water mark, pausing job claiming");
+      isClaimingPaused = true;
     }
+    return !isClaimingPaused;
+  }
+
+  /** restarts the checks as soon as the queue has drained 
+   * instead of waiting for the next poll */
+  protected void resumeClaimingIfDrained() {
+    if (isClaimingPaused && isRunning && executor.getQueueDepth()<=jobQueueLowWaterMark) {
+      isClaimingPaused = false;
+      executor.execute(checkWorkflowInstanceJobsRunnable);
+      executor.execute(checkJobsRunnable);
+    }
+  }
+
+  public boolean isClaimingPaused() {
+    return isClaimingPaused;
+  }
+
+  public Histogram getClaimToStartLatency() {
+    return claimToStartLatency;
   }
   
   class ExecuteJob implements Runnable {
     Job job;
+    long claimTime = System.currentTimeMillis();
     public ExecuteJob(Job job) {
       this.job = job;
     }
     @Override
     public void run() {
+      claimToStartLatency.record(System.currentTimeMillis()-claimTime);
+      try {
+        executeClaimedJob();
+      } finally {
+        resumeClaimingIfDrained();
+      }
+    }
+    protected void executeClaimedJob() {
       executeJob(new JobExecution(job, configuration));
       if (job.isDone()||job.isDead()) {
         jobStore.deleteJobById(job.id);
         jobStore.saveArchivedJob(job);
       } else {
         jobStore.saveJob(job);
+        scheduleCheck(job);
       }
     }
   }
@@ -272,5 +493,6 @@ public class JobServiceImpl implements JobService, Brewable {
   @Override
   public void saveJob(Job job) {
     jobStore.saveJob(job);
+    scheduleCheck(job);
   }
 }
@@ -18,6 +18,7 @@ package com.effektif.workflow.impl.job;
 import java.util.List;
 
 import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.query.QueryIterator;
 
 
 /**
@@ -28,6 +29,8 @@ public interface JobStore {
   void saveJob(Job job);
   List<Job> findAllJobs();
   List<Job> findJobs(JobQuery query);
+  /** fetches the jobs in {@link JobQuery#getBatchSize() batches} while iterating */
+  QueryIterator<Job> iterateJobs(JobQuery query);
 
   void deleteJobById(String jobId);
   void deleteJob(Job job);
@@ -40,6 +43,10 @@ public interface JobStore {
   /** locks a job not having a {@link Job#lock} specified
    * and retrieves it from the store */
   Job lockNextJob();
+  /** locks up to maxJobs due jobs not having a {@link Job#lock} specified
+   * and retrieves them from the store in one go.  
+   * Returns an empty list if there are no due jobs. */
+  List<Job> lockNextJobs(int maxJobs);
   Job lockJobByKey(String jobKey);
 
 }
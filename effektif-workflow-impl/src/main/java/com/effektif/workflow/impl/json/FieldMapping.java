@@ -13,6 +13,9 @@
  * limitations under the License. */
 package com.effektif.workflow.impl.json;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.util.Collection;
@@ -26,12 +29,21 @@ import com.effektif.workflow.impl.util.Reflection;
 
 /**
  * Uses a {@link JsonTypeMapper} to serialise and deserialise a particular API model field.
+ *
+ * The field is accessed through method handles that are resolved once when the
+ * mapping is created, so that reading and writing beans doesn't go through
+ * reflective {@link Field#get(Object)} and {@link Field#set(Object, Object)} calls.
  */
 public class FieldMapping {
   
   private static final Logger log = LoggerFactory.getLogger(FieldMapping.class);
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
   
   Field field;
+  MethodHandle getter;
+  MethodHandle setter;
   String jsonFieldName;
   Type fieldType;
   JsonTypeMapper jsonTypeMapper;
@@ -48,11 +60,18 @@ public class FieldMapping {
     this.jsonFieldName = field.getName();
     this.fieldType = field.getGenericType(); 
     this.jsonTypeMapper = jsonTypeMapper;
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+      this.setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException("Couldn't access field "+field+": "+e.getMessage(), e);
+    }
   }
 
   public void writeField(Object bean, JsonWriter jsonWriter) {
     try {
-      Object fieldValue = field.get(bean);
+      Object fieldValue = getFieldValue(bean);
       if (fieldValue!=null) {
         // log.debug("writing "+Reflection.getSimpleName(field)+" with "+jsonTypeMapper+" : "+fieldValue);
         if (inline!=null) {
@@ -84,13 +103,55 @@ public class FieldMapping {
       if (jsonFieldValue!=null) {
         // log.debug("read "+Reflection.getSimpleName(field)+" with "+jsonTypeMapper+" : "+jsonFieldValue);
         Object fieldValue = jsonTypeMapper.read(jsonFieldValue, jsonReader);
-        field.set(bean, fieldValue);
+        setFieldValue(bean, fieldValue);
       }
     } catch (Exception e) {
       throw new RuntimeException("Error reading "+field+": "+e.getMessage()+": "+beanJson, e);
     }
   }
 
+  /** reads the field value at the current token of the stream reader */
+  public void readField(Object bean, JsonStreamReader jsonStreamReader) {
+    try {
+      Object fieldValue = jsonStreamReader.readValue(jsonTypeMapper);
+      if (fieldValue!=null) {
+        setFieldValue(bean, fieldValue);
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("Error reading "+field+": "+e.getMessage(), e);
+    }
+  }
+
+  /** reads the inline field from the json fields that didn't match any other field */
+  public void readInlineField(Map<String,Object> unmappedJson, Object bean, JsonReader jsonReader) {
+    try {
+      Object fieldValue = jsonTypeMapper.read(unmappedJson, jsonReader);
+      setFieldValue(bean, fieldValue);
+    } catch (Exception e) {
+      throw new RuntimeException("Error reading "+field+": "+e.getMessage()+": "+unmappedJson, e);
+    }
+  }
+
+  protected Object getFieldValue(Object bean) {
+    try {
+      return (Object) getter.invokeExact(bean);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
+  protected void setFieldValue(Object bean, Object fieldValue) {
+    try {
+      setter.invokeExact(bean, fieldValue);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
   public String getFieldName() {
     return field.getName();
   }
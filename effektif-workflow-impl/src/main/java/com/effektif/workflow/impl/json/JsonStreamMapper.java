@@ -14,14 +14,20 @@
 package com.effektif.workflow.impl.json;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 
+import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -29,16 +35,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 /**
  * An API that implements logic for mapping model classes to and from JSON.
  *
+ * All parsers and generators are created by one shared {@link JsonFactory},
+ * which recycles their buffers per thread.  Generators are closed after each
+ * write to hand back their buffers, without closing the target stream or writer.
+ *
  * @author Tom Baeyens
  */
 public class JsonStreamMapper {
 
   ObjectMapper objectMapper;
+  JsonFactory jsonFactory;
   Mappings mappings;
   boolean pretty;
   
   public JsonStreamMapper() {
     this.objectMapper = new ObjectMapper();
+    this.jsonFactory = objectMapper.getFactory();
+    this.jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
   }
 
   public JsonStreamMapper pretty() {
@@ -62,15 +75,43 @@ public class JsonStreamMapper {
     return read(reader, (Type)clazz);
   }
 
+  /** binds the JSON directly from the parser, without building an intermediate tree of maps and lists */
   public <T> T read(Reader reader, Type type) {
     try {
-      Object beanJsonObject = objectMapper.readValue(reader, Object.class);
-      if (beanJsonObject==null) {
+      return read(jsonFactory.createParser(reader), type);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public <T> T read(InputStream inputStream, Class<T> clazz) {
+    return read(inputStream, (Type)clazz);
+  }
+
+  /** reads JSON bytes, of which the encoding (UTF-8 unless a BOM says otherwise) is detected by the parser */
+  public <T> T read(InputStream inputStream, Type type) {
+    try {
+      return read(jsonFactory.createParser(inputStream), type);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  protected <T> T read(JsonParser jsonParser, Type type) {
+    try {
+      if (jsonParser.nextToken()==null) {
         return null;
       }
-      return readJsonObject(beanJsonObject, type);
+      JsonStreamReader jsonStreamReader = new JsonStreamReader(mappings, jsonParser);
+      return (T) jsonStreamReader.readObject(type);
     } catch (Exception e) {
       throw new RuntimeException(e);
+    } finally {
+      try {
+        jsonParser.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 
@@ -90,15 +131,49 @@ public class JsonStreamMapper {
   
   public <T> void write(T bean, Writer writer) {
     try {
-      JsonGenerator jgen = new JsonFactory().createGenerator(writer);
+      write(bean, jsonFactory.createGenerator(writer));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** writes UTF-8 encoded JSON directly to the stream.  The stream is flushed, not closed. */
+  public <T> void write(T bean, OutputStream outputStream) {
+    try {
+      write(bean, jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** the UTF-8 encoded JSON.  It's written into segments that are recycled 
+   * per thread by the json factory and copied once into the returned array. */
+  public <T> byte[] writeBytes(T bean) {
+    ByteArrayBuilder byteArrayBuilder = new ByteArrayBuilder(jsonFactory._getBufferRecycler());
+    try {
+      write(bean, byteArrayBuilder);
+      return byteArrayBuilder.toByteArray();
+    } finally {
+      byteArrayBuilder.release();
+    }
+  }
+
+  /** the UTF-8 encoded JSON, the buffer wraps the array of {@link #writeBytes(Object)} */
+  public <T> ByteBuffer writeByteBuffer(T bean) {
+    return ByteBuffer.wrap(writeBytes(bean));
+  }
+
+  protected <T> void write(T bean, JsonGenerator jgen) throws IOException {
+    try {
       if (pretty) {
         jgen.setPrettyPrinter(new DefaultPrettyPrinter());
       }
       JsonStreamWriter jsonStreamWriter = new JsonStreamWriter(mappings,jgen);
       jsonStreamWriter.writeObject(bean);
-      jgen.flush();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    } finally {
+      // closing flushes and releases the recycled buffers,
+      // the target is left open as AUTO_CLOSE_TARGET is disabled
+      jgen.close();
     }
   }
 
@@ -13,13 +13,132 @@
  * limitations under the License. */
 package com.effektif.workflow.impl.json;
 
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
 /**
- * Deserialises from JSON using a stream-based JSON representation.
+ * Deserialises from JSON by pulling tokens from a {@link JsonParser}.
+ *
+ * Type mappers that implement {@link JsonStreamTypeMapper} bind directly from
+ * the parser.  For all other type mappers, only the JSON of their own value is
+ * materialized as a tree of maps and lists.
  */
 public class JsonStreamReader extends JsonReader {
 
+  JsonParser jsonParser;
+
   public JsonStreamReader(Mappings mappings) {
     super(mappings);
   }
-  
-}
\ No newline at end of file
+
+  public JsonStreamReader(Mappings mappings, JsonParser jsonParser) {
+    super(mappings);
+    this.jsonParser = jsonParser;
+  }
+
+  /** reads the value at the current token as the given type */
+  public Object readObject(Type type) {
+    if (getCurrentToken()==JsonToken.VALUE_NULL) {
+      return null;
+    }
+    JsonTypeMapper typeMapper = mappings.getTypeMapper(type);
+    return readValue(typeMapper);
+  }
+
+  /** reads the value at the current token with the given type mapper */
+  public Object readValue(JsonTypeMapper typeMapper) {
+    if (getCurrentToken()==JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (typeMapper instanceof JsonStreamTypeMapper) {
+      return ((JsonStreamTypeMapper)typeMapper).read(this);
+    }
+    Object jsonValue = readTree();
+    return typeMapper.read(jsonValue, this);
+  }
+
+  /** materializes the value at the current token as maps, lists and primitive values */
+  public Object readTree() {
+    try {
+      return jsonParser.readValueAs(Object.class);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** copies the object that has been read up to the current field name, 
+   * and the rest of that object, so that it can be parsed again with {@link #createBufferParser(TokenBuffer)}. */
+  public TokenBuffer bufferObject() {
+    try {
+      TokenBuffer tokenBuffer = new TokenBuffer(jsonParser.getCodec(), false);
+      tokenBuffer.writeStartObject();
+      while (getCurrentToken()==JsonToken.FIELD_NAME) {
+        tokenBuffer.copyCurrentStructure(jsonParser);
+        nextToken();
+      }
+      tokenBuffer.writeEndObject();
+      return tokenBuffer;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** creates a parser that replays the given buffer, positioned at its first token */
+  public JsonParser createBufferParser(TokenBuffer tokenBuffer) {
+    JsonParser bufferParser = tokenBuffer.asParser(jsonParser.getCodec());
+    try {
+      bufferParser.nextToken();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return bufferParser;
+  }
+
+  public JsonToken nextToken() {
+    try {
+      return jsonParser.nextToken();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public JsonToken getCurrentToken() {
+    return jsonParser.getCurrentToken();
+  }
+
+  public String getCurrentName() {
+    try {
+      return jsonParser.getCurrentName();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public String getText() {
+    try {
+      return jsonParser.getText();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public void skipChildren() {
+    try {
+      jsonParser.skipChildren();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public JsonParser getJsonParser() {
+    return jsonParser;
+  }
+
+  public void setJsonParser(JsonParser jsonParser) {
+    this.jsonParser = jsonParser;
+  }
+}
@@ -0,0 +1,31 @@
+/* Copyright (c) 2014, Effektif GmbH.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+package com.effektif.workflow.impl.json;
+
+
+/**
+ * Implemented by {@link JsonTypeMapper}s that can bind their value directly
+ * from the parser of a {@link JsonStreamReader}, without first materializing
+ * the JSON as a tree of maps and lists.
+ *
+ * Other type mappers are passed the JSON tree of their value.
+ *
+ * @param <T> The Java type to map from JSON.
+ */
+public interface JsonStreamTypeMapper<T> {
+
+  /** Reads the value that starts at the current token of the reader's parser.
+   * When this returns, the current token is the last token of the value. */
+  T read(JsonStreamReader jsonStreamReader);
+}
@@ -20,12 +20,14 @@ import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +49,11 @@ import com.effektif.workflow.impl.util.Reflection;
  * Registry for static information used to map API model classes to and from JSON. The purpose of this class is to
  * provide a static cache of class information that is programmatically registered or discovered by reflection.
  *
+ * Lookups of type mappings and type mappers are lock free.  Discovery of new types
+ * is serialized and its results are only published once the whole (possibly
+ * recursive) discovery is complete, so concurrent readers never see a type mapping
+ * for which the field mappings are still being scanned.
+ *
  * @author Tom Baeyens
  */
 public class Mappings {
@@ -81,12 +88,28 @@ public class Mappings {
   
   /** Type mappings contain the field mappings for each type.  
    * Types can be parameterized.
-   * Dynamically initialized */ 
-  protected Map<Type, TypeMapping> typeMappings = new HashMap<>();
+   * Dynamically initialized, only contains completely scanned type mappings. */ 
+  protected Map<Type, TypeMapping> typeMappings = new ConcurrentHashMap<>();
 
   /** Json type mappers are the SPI to plug in support for particular types,
-   * Dynamically initialized. */ 
-  protected Map<Type, JsonTypeMapper> typeMappers = new HashMap<>();
+   * Dynamically initialized, only contains type mappers of which the discovery is complete. */ 
+  protected Map<Type, JsonTypeMapper> typeMappers = new ConcurrentHashMap<>();
+
+  /** the type mapper for values of which the type is unknown (null),
+   * kept separately as the concurrent map doesn't allow null keys. */
+  protected volatile JsonTypeMapper untypedTypeMapper;
+
+  /** guards the discovery of new type mappings and type mappers */
+  protected Object discoveryLock = new Object();
+
+  /** nesting level of the discovery in progress, guarded by {@link #discoveryLock} */
+  int discoveryDepth = 0;
+
+  /** type mappings created by the discovery in progress, guarded by {@link #discoveryLock} */
+  Map<Type, TypeMapping> discoveredTypeMappings = new HashMap<>();
+
+  /** type mappers created by the discovery in progress, guarded by {@link #discoveryLock} */
+  Map<Type, JsonTypeMapper> discoveredTypeMappers = new HashMap<>();
   
   /** dynamically initialized */
   protected Map<Class<?>, Map<String,Type>> fieldTypes = new HashMap<>();
@@ -119,6 +142,7 @@ public class Mappings {
     this.typeMappings = other.typeMappings;
     this.typeMappers = other.typeMappers;
     this.fieldTypes = other.fieldTypes;
+    this.discoveryLock = other.discoveryLock;
   }
 
   protected void registerSubClass(Class< ? > subClass) {
@@ -250,7 +274,28 @@ public class Mappings {
   }
 
   public JsonTypeMapper getTypeMapper(Type type) {
-    JsonTypeMapper jsonTypeMapper = typeMappers.get(type);
+    JsonTypeMapper jsonTypeMapper = getPublishedTypeMapper(type);
+    if (jsonTypeMapper!=null) {
+      return jsonTypeMapper;
+    }
+    synchronized (discoveryLock) {
+      startDiscovery();
+      try {
+        jsonTypeMapper = discoverTypeMapper(type);
+        publishDiscovery();
+        return jsonTypeMapper;
+      } finally {
+        endDiscovery();
+      }
+    }
+  }
+
+  /** must be called while holding the {@link #discoveryLock} */
+  protected JsonTypeMapper discoverTypeMapper(Type type) {
+    JsonTypeMapper jsonTypeMapper = getPublishedTypeMapper(type);
+    if (jsonTypeMapper==null) {
+      jsonTypeMapper = discoveredTypeMappers.get(type);
+    }
     if (jsonTypeMapper!=null) {
       return jsonTypeMapper;
     }
@@ -275,10 +320,41 @@ public class Mappings {
     }
 
     jsonTypeMapper.setMappings(this);
-    typeMappers.put(type, jsonTypeMapper);
+    discoveredTypeMappers.put(type, jsonTypeMapper);
     return jsonTypeMapper;
   }
 
+  private JsonTypeMapper getPublishedTypeMapper(Type type) {
+    return type!=null ? typeMappers.get(type) : untypedTypeMapper;
+  }
+
+  private void startDiscovery() {
+    discoveryDepth++;
+  }
+
+  /** makes the discovered mappings visible to readers once the outermost discovery completes */
+  private void publishDiscovery() {
+    if (discoveryDepth==1) {
+      typeMappings.putAll(discoveredTypeMappings);
+      for (Map.Entry<Type, JsonTypeMapper> entry: discoveredTypeMappers.entrySet()) {
+        if (entry.getKey()!=null) {
+          typeMappers.put(entry.getKey(), entry.getValue());
+        } else {
+          untypedTypeMapper = entry.getValue();
+        }
+      }
+    }
+  }
+
+  /** on failure of the outermost discovery, the partial results are dropped */
+  private void endDiscovery() {
+    discoveryDepth--;
+    if (discoveryDepth==0) {
+      discoveredTypeMappings.clear();
+      discoveredTypeMappers.clear();
+    }
+  }
+
   /** finds the most concrete polymorphic mapping that matches the given type. */
   public PolymorphicMapping getPolymorphicMapping(Type type) {
     Class<?> clazz = Reflection.getRawClass(type);
@@ -299,14 +375,39 @@ public class Mappings {
   }
 
   public TypeMapping getTypeMapping(Type type) {
+    if (type == null) {
+      throw new IllegalArgumentException("type may not be null");
+    }
     TypeMapping typeMapping = typeMappings.get(type);
     if (typeMapping!=null) {
       // log.debug("Found type mapping "+typeMapping+" in cache for type "+Reflection.getSimpleName(type));
       return typeMapping;
     }
+    synchronized (discoveryLock) {
+      startDiscovery();
+      try {
+        typeMapping = discoverTypeMapping(type);
+        publishDiscovery();
+        return typeMapping;
+      } finally {
+        endDiscovery();
+      }
+    }
+  }
+
+  /** must be called while holding the {@link #discoveryLock} */
+  protected TypeMapping discoverTypeMapping(Type type) {
+    TypeMapping typeMapping = typeMappings.get(type);
+    if (typeMapping==null) {
+      typeMapping = discoveredTypeMappings.get(type);
+    }
+    if (typeMapping!=null) {
+      return typeMapping;
+    }
     // log.debug("Creating type mapping for "+Reflection.getSimpleName(type));
     typeMapping = new TypeMapping(type);
-    typeMappings.put(type, typeMapping);
+    // registered before scanning so that recursive references to this type resolve
+    discoveredTypeMappings.put(type, typeMapping);
     scanFieldMappings(type, typeMapping);
     // log.debug("Creating type mapping "+typeMapping);
     return typeMapping;
@@ -348,7 +449,7 @@ public class Mappings {
         }
       }
     }
-    typeMapping.setFieldMappings(fieldMappings);
+    typeMapping.setFieldMappings(Collections.unmodifiableList(fieldMappings));
   }
 
   private FieldMapping removeField(List<FieldMapping> fieldMappings, String fieldName) {
@@ -13,8 +13,15 @@
  * limitations under the License. */
 package com.effektif.workflow.impl.json;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.effektif.workflow.impl.util.Reflection;
 
@@ -29,10 +36,34 @@ public class TypeMapping {
   Type type;
   Class<?> rawClass;
   List<FieldMapping> fieldMappings;
+  /** index for binding json fields while streaming */
+  Map<String,FieldMapping> fieldMappingsByJsonName;
+  /** the field mapping that collects all json fields that don't map to a field, if any */
+  FieldMapping inlineFieldMapping;
+  /** resolved once for concrete classes with a no-arg constructor, null otherwise */
+  MethodHandle constructor;
   
   public TypeMapping(Type type) {
     this.type = type;
     this.rawClass = Reflection.getRawClass(type);
+    this.constructor = findConstructor(rawClass);
+  }
+
+  static MethodHandle findConstructor(Class<?> rawClass) {
+    if (rawClass==null
+        || rawClass.isInterface()
+        || Modifier.isAbstract(rawClass.getModifiers())) {
+      return null;
+    }
+    try {
+      Constructor<?> constructor = rawClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return MethodHandles.lookup()
+        .unreflectConstructor(constructor)
+        .asType(MethodType.methodType(Object.class));
+    } catch (Exception e) {
+      return null;
+    }
   }
   
   public boolean isParameterized() {
@@ -40,7 +71,16 @@ public class TypeMapping {
   }
   
   public Object instantiate() {
-    return Reflection.instantiate(rawClass);
+    if (constructor==null) {
+      return Reflection.instantiate(rawClass);
+    }
+    try {
+      return (Object) constructor.invokeExact();
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException("Couldn't instantiate "+rawClass, t);
+    }
   }
 
   public Class< ? > getRawClass() {
@@ -59,7 +99,25 @@ public class TypeMapping {
     return "TypeMapping<"+Reflection.getSimpleName(type)+">";
   }
 
+  public FieldMapping getFieldMapping(String jsonFieldName) {
+    return fieldMappingsByJsonName.get(jsonFieldName);
+  }
+
+  public FieldMapping getInlineFieldMapping() {
+    return inlineFieldMapping;
+  }
+
   public void setFieldMappings(List<FieldMapping> fieldMappings) {
+    Map<String,FieldMapping> fieldMappingsByJsonName = new HashMap<>();
+    FieldMapping inlineFieldMapping = null;
+    for (FieldMapping fieldMapping: fieldMappings) {
+      fieldMappingsByJsonName.put(fieldMapping.jsonFieldName, fieldMapping);
+      if (fieldMapping.inline!=null) {
+        inlineFieldMapping = fieldMapping;
+      }
+    }
+    this.fieldMappingsByJsonName = fieldMappingsByJsonName;
+    this.inlineFieldMapping = inlineFieldMapping;
     this.fieldMappings = fieldMappings;
   }
 }
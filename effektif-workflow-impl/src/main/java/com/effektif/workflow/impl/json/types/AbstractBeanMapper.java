@@ -13,13 +13,19 @@
  * limitations under the License. */
 package com.effektif.workflow.impl.json.types;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.effektif.workflow.impl.data.InvalidValueException;
 import com.effektif.workflow.impl.json.FieldMapping;
 import com.effektif.workflow.impl.json.JsonReader;
+import com.effektif.workflow.impl.json.JsonStreamReader;
+import com.effektif.workflow.impl.json.JsonStreamTypeMapper;
 import com.effektif.workflow.impl.json.JsonWriter;
 import com.effektif.workflow.impl.json.TypeMapping;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 
 /**
@@ -27,7 +33,7 @@ import com.effektif.workflow.impl.json.TypeMapping;
  *
  * @author Tom Baeyens
  */
-public abstract class AbstractBeanMapper<T extends Object> extends AbstractTypeMapper<T> {
+public abstract class AbstractBeanMapper<T extends Object> extends AbstractTypeMapper<T> implements JsonStreamTypeMapper<T> {
   
   String beanTypeName;
 
@@ -37,6 +43,19 @@ public abstract class AbstractBeanMapper<T extends Object> extends AbstractTypeM
 
   protected abstract TypeMapping getTypeMapping(Map<String, Object> jsonObject);
   protected abstract TypeMapping getTypeMapping(Class<?> beanClass);
+  /** determines the type mapping for the object of which the reader just passed the start.
+   * Implementations may replace the reader's parser, e.g. to look ahead for a type field. */
+  protected abstract TypeMapping getTypeMapping(JsonStreamReader jsonStreamReader);
+
+  /** the json field that holds the type name, which is not bound to a bean field. */
+  protected String getTypeField() {
+    return null;
+  }
+
+  /** invoked after all fields are read from JSON, to allow for post processing of the bean */
+  protected T readCompleted(T bean, JsonReader jsonReader) {
+    return bean;
+  }
 
   @Override
   public T read(Object jsonValue, JsonReader jsonReader) {
@@ -48,12 +67,57 @@ public abstract class AbstractBeanMapper<T extends Object> extends AbstractTypeM
       for (FieldMapping fieldMapping: fieldMappings) {
         fieldMapping.readField(jsonObject, bean, jsonReader);
       }
-      return (T) bean;
+      return readCompleted((T) bean, jsonReader);
     } catch (ClassCastException e) {
       throw new RuntimeException("Couldn't cast "+jsonValue+" to a map", e);
     }
   }
 
+  @Override
+  public T read(JsonStreamReader jsonStreamReader) {
+    if (jsonStreamReader.getCurrentToken()!=JsonToken.START_OBJECT) {
+      throw new InvalidValueException("Expected an object for "+beanTypeName+", but was "+jsonStreamReader.getCurrentToken());
+    }
+    jsonStreamReader.nextToken();
+    JsonParser jsonParser = jsonStreamReader.getJsonParser();
+    try {
+      TypeMapping typeMapping = getTypeMapping(jsonStreamReader);
+      Object bean = typeMapping.instantiate();
+      readFields(bean, typeMapping, jsonStreamReader);
+      return readCompleted((T) bean, jsonStreamReader);
+    } finally {
+      // the type field lookahead may have switched to a buffered parser
+      jsonStreamReader.setJsonParser(jsonParser);
+    }
+  }
+
+  protected void readFields(Object bean, TypeMapping typeMapping, JsonStreamReader jsonStreamReader) {
+    String typeField = getTypeField();
+    FieldMapping inlineFieldMapping = typeMapping.getInlineFieldMapping();
+    Map<String,Object> unmappedJson = null;
+    while (jsonStreamReader.getCurrentToken()==JsonToken.FIELD_NAME) {
+      String jsonFieldName = jsonStreamReader.getCurrentName();
+      jsonStreamReader.nextToken();
+      FieldMapping fieldMapping = typeMapping.getFieldMapping(jsonFieldName);
+      if (fieldMapping!=null && fieldMapping!=inlineFieldMapping) {
+        fieldMapping.readField(bean, jsonStreamReader);
+      } else if (fieldMapping==null
+                 && inlineFieldMapping!=null
+                 && !jsonFieldName.equals(typeField)) {
+        if (unmappedJson==null) {
+          unmappedJson = new LinkedHashMap<>();
+        }
+        unmappedJson.put(jsonFieldName, jsonStreamReader.readTree());
+      } else {
+        jsonStreamReader.skipChildren();
+      }
+      jsonStreamReader.nextToken();
+    }
+    if (unmappedJson!=null) {
+      inlineFieldMapping.readInlineField(unmappedJson, bean, jsonStreamReader);
+    }
+  }
+
   @Override
   public void write(T bean, JsonWriter jsonWriter) {
     jsonWriter.loopCheckBeanStart(bean);
@@ -15,6 +15,7 @@ package com.effektif.workflow.impl.json.types;
 
 import java.util.Map;
 
+import com.effektif.workflow.impl.json.JsonStreamReader;
 import com.effektif.workflow.impl.json.TypeMapping;
 import com.effektif.workflow.impl.util.Reflection;
 
@@ -40,4 +41,9 @@ public class BeanMapper<T> extends AbstractBeanMapper<T> {
   protected TypeMapping getTypeMapping(Class beanClass) {
     return typeMapping;
   }
+
+  @Override
+  protected TypeMapping getTypeMapping(JsonStreamReader jsonStreamReader) {
+    return typeMapping;
+  }
 }
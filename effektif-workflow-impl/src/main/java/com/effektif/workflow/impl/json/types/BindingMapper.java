@@ -57,8 +57,7 @@ public class BindingMapper extends BeanMapper<Binding> {
   }
 
   @Override
-  public Binding read(Object jsonValue, JsonReader jsonReader) {
-    Binding binding = super.read(jsonValue, jsonReader);
+  protected Binding readCompleted(Binding binding, JsonReader jsonReader) {
     DataType dataType = binding.getType();
     Object jsonVariableValue = binding.getValue();
     if (!isParameterized // if it's parameterized, then the this.typeMapping already performed the deserialization of the value 
@@ -19,8 +19,11 @@ import java.util.List;
 
 import com.effektif.workflow.impl.data.InvalidValueException;
 import com.effektif.workflow.impl.json.JsonReader;
+import com.effektif.workflow.impl.json.JsonStreamReader;
+import com.effektif.workflow.impl.json.JsonStreamTypeMapper;
 import com.effektif.workflow.impl.json.JsonTypeMapper;
 import com.effektif.workflow.impl.json.JsonWriter;
+import com.fasterxml.jackson.core.JsonToken;
 
 
 /**
@@ -28,7 +31,7 @@ import com.effektif.workflow.impl.json.JsonWriter;
  *
  * @author Tom Baeyens
  */
-public class CollectionMapper extends AbstractTypeMapper<Collection> {
+public class CollectionMapper extends AbstractTypeMapper<Collection> implements JsonStreamTypeMapper<Collection> {
 
   JsonTypeMapper elementMapper;
   Class<? extends Collection> collectionType;
@@ -43,12 +46,7 @@ public class CollectionMapper extends AbstractTypeMapper<Collection> {
     if (!Collection.class.isAssignableFrom(jsonValue.getClass())) {
       throw new InvalidValueException(String.format("Invalid Collection value ‘%s’ (%s)", jsonValue, jsonValue.getClass().getName()));
     }
-    Collection list = null;
-    try {
-      list = collectionType.newInstance();
-    } catch (Exception e) {
-      throw new RuntimeException("Couldn't instantiate collection: "+e.getMessage(), e);
-    }
+    Collection list = instantiateCollection();
     Collection jsonCollection = (Collection) jsonValue;
     Iterator jsonIterator = jsonCollection.iterator();
     while (jsonIterator.hasNext()) {
@@ -59,6 +57,27 @@ public class CollectionMapper extends AbstractTypeMapper<Collection> {
     return list;
   }
 
+  @Override
+  public Collection read(JsonStreamReader jsonStreamReader) {
+    if (jsonStreamReader.getCurrentToken()!=JsonToken.START_ARRAY) {
+      throw new InvalidValueException(String.format("Invalid Collection value ‘%s’", jsonStreamReader.getText()));
+    }
+    Collection list = instantiateCollection();
+    while (jsonStreamReader.nextToken()!=JsonToken.END_ARRAY) {
+      Object objectElementValue = jsonStreamReader.readValue(elementMapper);
+      list.add(objectElementValue);
+    }
+    return list;
+  }
+
+  protected Collection instantiateCollection() {
+    try {
+      return collectionType.newInstance();
+    } catch (Exception e) {
+      throw new RuntimeException("Couldn't instantiate collection: "+e.getMessage(), e);
+    }
+  }
+
   @Override
   public void write(Collection objectValue, JsonWriter jsonWriter) {
     jsonWriter.arrayStart();
@@ -16,9 +16,13 @@ package com.effektif.workflow.impl.json.types;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import com.effektif.workflow.impl.data.InvalidValueException;
 import com.effektif.workflow.impl.json.JsonReader;
+import com.effektif.workflow.impl.json.JsonStreamReader;
+import com.effektif.workflow.impl.json.JsonStreamTypeMapper;
 import com.effektif.workflow.impl.json.JsonTypeMapper;
 import com.effektif.workflow.impl.json.JsonWriter;
+import com.fasterxml.jackson.core.JsonToken;
 
 
 /**
@@ -26,7 +30,7 @@ import com.effektif.workflow.impl.json.JsonWriter;
  *
  * @author Tom Baeyens
  */
-public class MapMapper extends AbstractTypeMapper<Map> implements JsonTypeMapper<Map> {
+public class MapMapper extends AbstractTypeMapper<Map> implements JsonTypeMapper<Map>, JsonStreamTypeMapper<Map> {
 
   JsonTypeMapper valueMapper;
   
@@ -67,6 +71,21 @@ public class MapMapper extends AbstractTypeMapper<Map> implements JsonTypeMapper
     return objectMap;
   }
 
+  @Override
+  public Map read(JsonStreamReader jsonStreamReader) {
+    if (jsonStreamReader.getCurrentToken()!=JsonToken.START_OBJECT) {
+      throw new InvalidValueException(String.format("Invalid Map value ‘%s’", jsonStreamReader.getText()));
+    }
+    Map<String,Object> objectMap = new LinkedHashMap<>();
+    while (jsonStreamReader.nextToken()==JsonToken.FIELD_NAME) {
+      String key = jsonStreamReader.getCurrentName();
+      jsonStreamReader.nextToken();
+      Object objectElementValue = jsonStreamReader.readValue(valueMapper);
+      objectMap.put(key, objectElementValue);
+    }
+    return objectMap;
+  }
+
   @Override
   public String toString() {
     return getClass().getSimpleName()+"<"+valueMapper+">";
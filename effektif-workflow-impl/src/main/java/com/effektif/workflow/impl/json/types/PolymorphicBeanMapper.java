@@ -15,8 +15,11 @@ package com.effektif.workflow.impl.json.types;
 
 import java.util.Map;
 
+import com.effektif.workflow.impl.json.JsonStreamReader;
 import com.effektif.workflow.impl.json.PolymorphicMapping;
 import com.effektif.workflow.impl.json.TypeMapping;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 
 /**
@@ -40,4 +43,41 @@ public class PolymorphicBeanMapper extends AbstractBeanMapper {
   protected TypeMapping getTypeMapping(Class beanClass) {
     return polymorphicMapping.getTypeMapping(beanClass);
   }
+
+  @Override
+  protected String getTypeField() {
+    return polymorphicMapping.getTypeField();
+  }
+
+  @Override
+  protected TypeMapping getTypeMapping(JsonStreamReader jsonStreamReader) {
+    String typeField = polymorphicMapping.getTypeField();
+    // the writer puts the type field first, so usually no lookahead is needed
+    if (jsonStreamReader.getCurrentToken()==JsonToken.FIELD_NAME
+        && typeField.equals(jsonStreamReader.getCurrentName())) {
+      jsonStreamReader.nextToken();
+      String typeName = jsonStreamReader.getText();
+      jsonStreamReader.nextToken();
+      return polymorphicMapping.getTypeMapping(typeName);
+    }
+    // otherwise the rest of the object is buffered to find the type field,
+    // and the fields are then read from the buffer
+    TokenBuffer tokenBuffer = jsonStreamReader.bufferObject();
+    jsonStreamReader.setJsonParser(jsonStreamReader.createBufferParser(tokenBuffer));
+    jsonStreamReader.nextToken();
+    String typeName = null;
+    while (jsonStreamReader.getCurrentToken()==JsonToken.FIELD_NAME) {
+      String jsonFieldName = jsonStreamReader.getCurrentName();
+      jsonStreamReader.nextToken();
+      if (typeField.equals(jsonFieldName)) {
+        typeName = jsonStreamReader.getText();
+      } else {
+        jsonStreamReader.skipChildren();
+      }
+      jsonStreamReader.nextToken();
+    }
+    jsonStreamReader.setJsonParser(jsonStreamReader.createBufferParser(tokenBuffer));
+    jsonStreamReader.nextToken();
+    return polymorphicMapping.getTypeMapping(typeName);
+  }
 }
@@ -43,8 +43,7 @@ public class TypedValueMapper extends BeanMapper<TypedValue> {
   }
 
   @Override
-  public TypedValue read(Object jsonValue, JsonReader jsonReader) {
-    TypedValue typedValue = super.read(jsonValue, jsonReader);
+  protected TypedValue readCompleted(TypedValue typedValue, JsonReader jsonReader) {
     DataType dataType = typedValue.getDataType();
     Object jsonVariableValue = typedValue.getValue();
     if (jsonVariableValue!=null && dataType!=null) {
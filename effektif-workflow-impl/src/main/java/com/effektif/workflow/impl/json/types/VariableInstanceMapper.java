@@ -43,8 +43,7 @@ public class VariableInstanceMapper extends BeanMapper<VariableInstance> {
   }
 
   @Override
-  public VariableInstance read(Object jsonValue, JsonReader jsonReader) {
-    VariableInstance variableInstance = super.read(jsonValue, jsonReader);
+  protected VariableInstance readCompleted(VariableInstance variableInstance, JsonReader jsonReader) {
     DataType type = variableInstance.getType();
     Object jsonVariableValue = variableInstance.getValue();
     if (jsonVariableValue!=null && type!=null) {
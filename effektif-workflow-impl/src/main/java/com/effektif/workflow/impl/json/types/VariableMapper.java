@@ -27,8 +27,7 @@ public class VariableMapper extends BeanMapper<Variable> {
   }
 
   @Override
-  public Variable read(Object jsonValue, JsonReader jsonReader) {
-    Variable variable = super.read(jsonValue, jsonReader);
+  protected Variable readCompleted(Variable variable, JsonReader jsonReader) {
     DataType type = variable.getType();
     Object jsonVariableValue = variable.getDefaultValue();
     if (jsonVariableValue!=null && type!=null) {
@@ -17,6 +17,8 @@ import java.util.Map;
 
 import com.effektif.workflow.api.model.VariableValues;
 import com.effektif.workflow.impl.json.JsonReader;
+import com.effektif.workflow.impl.json.JsonStreamReader;
+import com.effektif.workflow.impl.json.JsonStreamTypeMapper;
 import com.effektif.workflow.impl.json.JsonWriter;
 
 
@@ -26,7 +28,7 @@ import com.effektif.workflow.impl.json.JsonWriter;
  *
  * @author Tom Baeyens
  */
-public class VariableValuesMapper extends AbstractTypeMapper<VariableValues> {
+public class VariableValuesMapper extends AbstractTypeMapper<VariableValues> implements JsonStreamTypeMapper<VariableValues> {
   
   MapMapper valuesMapper;
   
@@ -42,6 +44,14 @@ public class VariableValuesMapper extends AbstractTypeMapper<VariableValues> {
     return variableValues;
   }
 
+  @Override
+  public VariableValues read(JsonStreamReader jsonStreamReader) {
+    Map values = valuesMapper.read(jsonStreamReader);
+    VariableValues variableValues = new VariableValues();
+    variableValues.setValues(values);
+    return variableValues;
+  }
+
   @Override
   public void write(VariableValues objectValue, JsonWriter jsonWriter) {
     valuesMapper.write(objectValue.getValues(), jsonWriter);
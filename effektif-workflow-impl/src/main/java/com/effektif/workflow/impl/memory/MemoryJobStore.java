@@ -23,9 +23,11 @@ import java.util.Map;
 import java.util.UUID;
 
 import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.query.QueryIterator;
 import com.effektif.workflow.impl.job.Job;
 import com.effektif.workflow.impl.job.JobQuery;
 import com.effektif.workflow.impl.job.JobStore;
+import com.effektif.workflow.impl.util.MappingQueryIterator;
 
 
 /**
@@ -47,6 +49,21 @@ public class MemoryJobStore implements JobStore {
     return null;
   }
 
+  @Override
+  public synchronized List<Job> lockNextJobs(int maxJobs) {
+    List<Job> lockedJobs = new ArrayList<>();
+    for (Job job: new ArrayList<>(jobs.values())) {
+      if (lockedJobs.size()>=maxJobs) {
+        break;
+      }
+      if (job.isDue() && !job.isDone() && job.getWorkflowInstanceId()==null) {
+        jobs.remove(job.id);
+        lockedJobs.add(job);
+      }
+    }
+    return lockedJobs;
+  }
+
   @Override
   public Job lockJobByKey(String key) {
     for (Job job: jobs.values()) {
@@ -124,6 +141,17 @@ public class MemoryJobStore implements JobStore {
     return result;
   }
 
+  @Override
+  public synchronized QueryIterator<Job> iterateJobs(final JobQuery query) {
+    // the jobs map isn't safe for iterating while jobs are saved, so only the references are copied
+    return new MappingQueryIterator<Job,Job>(new ArrayList<>(jobs.values()).iterator(), null, null) {
+      @Override
+      protected Job map(Job job) {
+        return query.meetsCriteria(job) ? job : null;
+      }
+    };
+  }
+
   @Override
   public void deleteJobByScope(WorkflowInstanceId workflowInstanceId, String activityInstanceId) {
     for (Job job: new ArrayList<>(archivedJobs)) {
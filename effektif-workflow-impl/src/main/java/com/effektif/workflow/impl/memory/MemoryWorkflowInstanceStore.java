@@ -27,13 +27,16 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 
 import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.query.QueryIterator;
 import com.effektif.workflow.api.query.WorkflowInstanceQuery;
+import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
 import com.effektif.workflow.impl.WorkflowEngineImpl;
 import com.effektif.workflow.impl.WorkflowInstanceStore;
 import com.effektif.workflow.impl.configuration.Brewable;
 import com.effektif.workflow.impl.configuration.Brewery;
 import com.effektif.workflow.impl.job.Job;
 import com.effektif.workflow.impl.util.Lists;
+import com.effektif.workflow.impl.util.MappingQueryIterator;
 import com.effektif.workflow.impl.util.Time;
 import com.effektif.workflow.impl.workflowinstance.LockImpl;
 import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
@@ -74,6 +77,14 @@ public class MemoryWorkflowInstanceStore implements WorkflowInstanceStore, Brewa
     workflowInstances.put(workflowInstance.id, workflowInstance);
   }
 
+  @Override
+  public Map<Integer, String> insertWorkflowInstances(List<WorkflowInstanceImpl> workflowInstances) {
+    for (WorkflowInstanceImpl workflowInstance: workflowInstances) {
+      insertWorkflowInstance(workflowInstance);
+    }
+    return Collections.emptyMap();
+  }
+
   @Override
   public void flush(WorkflowInstanceImpl workflowInstance) {
   }
@@ -116,6 +127,22 @@ public class MemoryWorkflowInstanceStore implements WorkflowInstanceStore, Brewa
     return workflowInstances;
   }
 
+  @Override
+  public List<WorkflowInstance> findWorkflowInstanceSummaries(WorkflowInstanceQuery query) {
+    // there is no parsing to skip as the workflow instances are kept in memory
+    return WorkflowInstanceImpl.toWorkflowInstances(findWorkflowInstances(query));
+  }
+
+  @Override
+  public QueryIterator<WorkflowInstance> iterateWorkflowInstances(final WorkflowInstanceQuery query) {
+    return new MappingQueryIterator<WorkflowInstanceImpl,WorkflowInstance>(workflowInstances.values().iterator(), query.getSkip(), query.getLimit()) {
+      @Override
+      protected WorkflowInstance map(WorkflowInstanceImpl workflowInstance) {
+        return workflowInstance.isIncluded(query) ? workflowInstance.toWorkflowInstance() : null;
+      }
+    };
+  }
+
   @Override
   public void deleteWorkflowInstances(WorkflowInstanceQuery workflowInstanceQuery) {
     for (WorkflowInstanceImpl workflowInstance: findWorkflowInstances(workflowInstanceQuery)) {
@@ -141,8 +168,10 @@ public class MemoryWorkflowInstanceStore implements WorkflowInstanceStore, Brewa
       throw new RuntimeException("Process instance doesn't exist");
     }
     WorkflowInstanceImpl workflowInstance = workflowInstances.get(0);
-    workflowInstanceId = workflowInstance.id;
-    lockWorkflowInstance(workflowInstance);
+    // like the other stores, null indicates the workflow instance is already locked
+    if (!tryLockWorkflowInstance(workflowInstance)) {
+      return null;
+    }
     return workflowInstance;
   }
 
@@ -163,6 +192,18 @@ public class MemoryWorkflowInstanceStore implements WorkflowInstanceStore, Brewa
     return null;
   }
 
+  @Override
+  public void waitingForLocalUnlock(WorkflowInstanceId workflowInstanceId) {
+  }
+
+  public synchronized boolean tryLockWorkflowInstance(WorkflowInstanceImpl workflowInstance) {
+    if (lockedWorkflowInstanceIds.contains(workflowInstance.getId())) {
+      return false;
+    }
+    lockWorkflowInstance(workflowInstance);
+    return true;
+  }
+
   public synchronized void lockWorkflowInstance(WorkflowInstanceImpl workflowInstance) {
     WorkflowInstanceId workflowInstanceId = workflowInstance.getId();
     if (lockedWorkflowInstanceIds.contains(workflowInstanceId)) {
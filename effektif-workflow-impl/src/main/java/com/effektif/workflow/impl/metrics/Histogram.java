@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Thread safe histogram with fixed buckets, mostly used for millisecond values.
+ * 
+ * Percentiles are reported as the upper bound of the bucket 
+ * that contains the percentile, which is precise enough to 
+ * spot slow activities without keeping the individual values.
+ */
+public class Histogram {
+
+  static final long[] BUCKET_BOUNDS = {
+    0, 1, 2, 5, 10, 20, 50, 100, 200, 500, 
+    1000, 2000, 5000, 10000, 30000, 60000, 300000, 
+    Long.MAX_VALUE
+  };
+
+  protected AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length);
+  protected AtomicLong count = new AtomicLong();
+  protected AtomicLong sum = new AtomicLong();
+  protected AtomicLong max = new AtomicLong();
+
+  public void record(long value) {
+    int bucket = 0;
+    while (value>BUCKET_BOUNDS[bucket]) {
+      bucket++;
+    }
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long currentMax = max.get();
+    while (value>currentMax && !max.compareAndSet(currentMax, value)) {
+      currentMax = max.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getSum() {
+    return sum.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long n = count.get();
+    return n>0 ? (double) sum.get() / n : 0;
+  }
+
+  /** @param percentile between 0 and 100 */
+  public long getPercentile(double percentile) {
+    long n = count.get();
+    if (n==0) {
+      return 0;
+    }
+    long threshold = (long) Math.ceil(n * percentile / 100);
+    long seen = 0;
+    for (int i=0; i<BUCKET_BOUNDS.length; i++) {
+      seen += buckets.get(i);
+      if (seen>=threshold) {
+        return Math.min(BUCKET_BOUNDS[i], getMax());
+      }
+    }
+    return getMax();
+  }
+
+  @Override
+  public String toString() {
+    return "count="+getCount()+" mean="+getMean()+" p50="+getPercentile(50)
+           +" p99="+getPercentile(99)+" max="+getMax();
+  }
+}
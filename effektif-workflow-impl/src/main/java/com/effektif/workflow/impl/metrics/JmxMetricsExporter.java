@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Exposes the metrics as attributes of a single dynamic MBean.
+ * 
+ * Counters are exposed with their name, histograms as 
+ * <code>name.count</code>, <code>name.mean</code>, <code>name.p50</code>, 
+ * <code>name.p99</code> and <code>name.max</code>.
+ * Attributes are read from the registry when they are queried.
+ */
+public class JmxMetricsExporter implements MetricsExporter {
+
+  private static final Logger log = LoggerFactory.getLogger(JmxMetricsExporter.class);
+
+  public static final String DEFAULT_OBJECT_NAME = "com.effektif:type=WorkflowEngineMetrics";
+
+  protected String objectName;
+  protected MBeanServer mbeanServer;
+  protected ObjectName registeredName;
+
+  public JmxMetricsExporter() {
+    this(DEFAULT_OBJECT_NAME);
+  }
+
+  public JmxMetricsExporter(String objectName) {
+    this.objectName = objectName;
+  }
+
+  @Override
+  public void start(MetricsRegistry metricsRegistry) {
+    try {
+      mbeanServer = ManagementFactory.getPlatformMBeanServer();
+      registeredName = new ObjectName(objectName);
+      if (mbeanServer.isRegistered(registeredName)) {
+        mbeanServer.unregisterMBean(registeredName);
+      }
+      mbeanServer.registerMBean(new MetricsMBean(metricsRegistry), registeredName);
+    } catch (Exception e) {
+      throw new RuntimeException("Couldn't register metrics mbean "+objectName+": "+e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (registeredName!=null) {
+      try {
+        mbeanServer.unregisterMBean(registeredName);
+      } catch (Exception e) {
+        log.debug("Couldn't unregister metrics mbean "+objectName+": "+e.getMessage());
+      }
+      registeredName = null;
+    }
+  }
+
+  protected static class MetricsMBean implements DynamicMBean {
+
+    MetricsRegistry metricsRegistry;
+
+    public MetricsMBean(MetricsRegistry metricsRegistry) {
+      this.metricsRegistry = metricsRegistry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      Map<String, Long> counters = metricsRegistry.getCounters();
+      if (counters.containsKey(attribute)) {
+        return counters.get(attribute);
+      }
+      int dotIndex = attribute.lastIndexOf('.');
+      Histogram histogram = dotIndex>0 ? metricsRegistry.getHistogram(attribute.substring(0, dotIndex)) : null;
+      if (histogram!=null) {
+        String statistic = attribute.substring(dotIndex+1);
+        if ("count".equals(statistic)) return histogram.getCount();
+        if ("mean".equals(statistic)) return histogram.getMean();
+        if ("p50".equals(statistic)) return histogram.getPercentile(50);
+        if ("p99".equals(statistic)) return histogram.getPercentile(99);
+        if ("max".equals(statistic)) return histogram.getMax();
+      }
+      throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+      AttributeList attributeList = new AttributeList();
+      for (String attribute: attributes) {
+        try {
+          attributeList.add(new Attribute(attribute, getAttribute(attribute)));
+        } catch (AttributeNotFoundException e) {
+          // skipping attributes that disappeared after a reset
+        }
+      }
+      return attributeList;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      List<MBeanAttributeInfo> attributeInfos = new ArrayList<>();
+      for (String counter: metricsRegistry.getCounters().keySet()) {
+        attributeInfos.add(new MBeanAttributeInfo(counter, "long", "counter", true, false, false));
+      }
+      for (String histogram: metricsRegistry.getHistograms().keySet()) {
+        attributeInfos.add(new MBeanAttributeInfo(histogram+".count", "long", "number of values", true, false, false));
+        attributeInfos.add(new MBeanAttributeInfo(histogram+".mean", "double", "mean millis", true, false, false));
+        attributeInfos.add(new MBeanAttributeInfo(histogram+".p50", "long", "median millis", true, false, false));
+        attributeInfos.add(new MBeanAttributeInfo(histogram+".p99", "long", "99th percentile millis", true, false, false));
+        attributeInfos.add(new MBeanAttributeInfo(histogram+".max", "long", "max millis", true, false, false));
+      }
+      return new MBeanInfo(getClass().getName(), "Workflow engine metrics", 
+              attributeInfos.toArray(new MBeanAttributeInfo[attributeInfos.size()]), 
+              null, null, null);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+      throw new UnsupportedOperationException("Metrics are read only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+      throw new UnsupportedOperationException("No operations on metrics");
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.impl.WorkflowExecutionListener;
+import com.effektif.workflow.impl.activity.ActivityType;
+import com.effektif.workflow.impl.workflow.TransitionImpl;
+import com.effektif.workflow.impl.workflow.WorkflowImpl;
+import com.effektif.workflow.impl.workflowinstance.ActivityInstanceImpl;
+import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
+
+
+/**
+ * Turns the workflow execution events into counters and latency histograms.
+ * 
+ * Register it with the workflow engine and optionally export the registry:
+ * <pre>
+ * MetricsRegistry metricsRegistry = new MetricsRegistry();
+ * workflowEngineImpl.addWorkflowExecutionListener(new MetricsListener(metricsRegistry));
+ * new JmxMetricsExporter().start(metricsRegistry);
+ * </pre>
+ * 
+ * Workflows are identified by their source workflow id if they have one 
+ * so that the metrics of all versions are combined.  Activities are 
+ * grouped by the simple name of their activity api class.
+ */
+public class MetricsListener implements WorkflowExecutionListener {
+
+  public static final String WORKFLOW_INSTANCES_STARTED = "workflowInstances.started";
+  public static final String WORKFLOW_INSTANCES_ENDED = "workflowInstances.ended";
+  public static final String ACTIVITY_INSTANCES_STARTED = "activityInstances.started";
+  public static final String ACTIVITY_INSTANCES_ENDED = "activityInstances.ended";
+  public static final String TRANSITIONS = "transitions";
+  public static final String INSERTS = "inserts";
+  public static final String FLUSHES = "flushes";
+  public static final String UNLOCKS = "unlocks";
+  public static final String FLUSHES_PER_LOCK = "flushesPerLock";
+  public static final String LOCK_HOLD_TIME = "lockHoldTime";
+
+  /** lock cycles are not tracked beyond this number of concurrently 
+   * locked workflow instances, which protects against instances 
+   * that are unlocked without an unlock notification */
+  public int maxTrackedLocks = 10000;
+
+  protected MetricsRegistry metricsRegistry;
+  protected ConcurrentMap<WorkflowInstanceId, LockCycle> lockCycles = new ConcurrentHashMap<>();
+
+  public MetricsListener(MetricsRegistry metricsRegistry) {
+    this.metricsRegistry = metricsRegistry;
+  }
+
+  @Override
+  public void starting(WorkflowInstanceImpl workflowInstance) {
+    lockCycle(workflowInstance);
+    metricsRegistry.counter(WORKFLOW_INSTANCES_STARTED).incrementAndGet();
+    metricsRegistry.counter(workflowMetric(workflowInstance.workflow, "started")).incrementAndGet();
+  }
+
+  @Override
+  public boolean starting(ActivityInstanceImpl activityInstance) {
+    lockCycle(activityInstance.workflowInstance);
+    metricsRegistry.counter(ACTIVITY_INSTANCES_STARTED).incrementAndGet();
+    metricsRegistry.counter(activityTypeMetric(activityInstance, "started")).incrementAndGet();
+    return true;
+  }
+
+  @Override
+  public void ended(ActivityInstanceImpl activityInstance) {
+    lockCycle(activityInstance.workflowInstance);
+    metricsRegistry.counter(ACTIVITY_INSTANCES_ENDED).incrementAndGet();
+    if (activityInstance.duration!=null) {
+      metricsRegistry.histogram(activityTypeMetric(activityInstance, "duration")).record(activityInstance.duration);
+    }
+  }
+
+  @Override
+  public void ended(WorkflowInstanceImpl workflowInstance) {
+    lockCycle(workflowInstance);
+    metricsRegistry.counter(WORKFLOW_INSTANCES_ENDED).incrementAndGet();
+    if (workflowInstance.duration!=null) {
+      metricsRegistry.histogram(workflowMetric(workflowInstance.workflow, "duration")).record(workflowInstance.duration);
+    }
+  }
+
+  @Override
+  public boolean transitioning(ActivityInstanceImpl from, TransitionImpl transition, ActivityInstanceImpl to) {
+    lockCycle(from!=null ? from.workflowInstance : null);
+    metricsRegistry.counter(TRANSITIONS).incrementAndGet();
+    return true;
+  }
+
+  @Override
+  public void insert(WorkflowInstanceImpl workflowInstance) {
+    metricsRegistry.counter(INSERTS).incrementAndGet();
+  }
+
+  @Override
+  public void flush(WorkflowInstanceImpl workflowInstance) {
+    metricsRegistry.counter(FLUSHES).incrementAndGet();
+    LockCycle lockCycle = lockCycle(workflowInstance);
+    if (lockCycle!=null) {
+      lockCycle.flushes++;
+    }
+  }
+
+  @Override
+  public void unlocked(WorkflowInstanceImpl workflowInstance) {
+    metricsRegistry.counter(UNLOCKS).incrementAndGet();
+    LockCycle lockCycle = lockCycles.remove(workflowInstance.id);
+    if (lockCycle!=null) {
+      metricsRegistry.histogram(FLUSHES_PER_LOCK).record(lockCycle.flushes);
+      metricsRegistry.histogram(LOCK_HOLD_TIME).record(System.currentTimeMillis()-lockCycle.lockTime);
+    }
+  }
+
+  /** tracks the lock cycle from the first event of a locked workflow instance */
+  protected LockCycle lockCycle(WorkflowInstanceImpl workflowInstance) {
+    if (workflowInstance==null || workflowInstance.id==null) {
+      return null;
+    }
+    LockCycle lockCycle = lockCycles.get(workflowInstance.id);
+    if (lockCycle==null && lockCycles.size()<maxTrackedLocks) {
+      LockCycle newLockCycle = new LockCycle();
+      newLockCycle.lockTime = workflowInstance.lock!=null && workflowInstance.lock.time!=null 
+              ? workflowInstance.lock.time.toDate().getTime() 
+              : System.currentTimeMillis();
+      lockCycle = lockCycles.putIfAbsent(workflowInstance.id, newLockCycle);
+      if (lockCycle==null) {
+        lockCycle = newLockCycle;
+      }
+    }
+    return lockCycle;
+  }
+
+  protected String workflowMetric(WorkflowImpl workflow, String metric) {
+    String workflowKey = workflow.sourceWorkflowId!=null ? workflow.sourceWorkflowId : String.valueOf(workflow.id);
+    return "workflow."+workflowKey+"."+metric;
+  }
+
+  protected String activityTypeMetric(ActivityInstanceImpl activityInstance, String metric) {
+    ActivityType activityType = activityInstance.activity.activityType;
+    Class<?> activityApiClass = activityType.getActivityApiClass();
+    String activityTypeKey = activityApiClass!=null ? activityApiClass.getSimpleName() : activityType.getClass().getSimpleName();
+    return "activityType."+activityTypeKey+"."+metric;
+  }
+
+  public MetricsRegistry getMetricsRegistry() {
+    return metricsRegistry;
+  }
+
+  /** a workflow instance is only modified by the thread holding the lock */
+  protected static class LockCycle {
+    long lockTime;
+    int flushes;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * In-memory store of the counters and histograms collected by 
+ * the {@link MetricsListener}, which {@link MetricsExporter}s read from.
+ */
+public class MetricsRegistry {
+
+  protected ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+  protected ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  public AtomicLong counter(String name) {
+    AtomicLong counter = counters.get(name);
+    if (counter==null) {
+      AtomicLong newCounter = new AtomicLong();
+      counter = counters.putIfAbsent(name, newCounter);
+      if (counter==null) {
+        counter = newCounter;
+      }
+    }
+    return counter;
+  }
+
+  public Histogram histogram(String name) {
+    Histogram histogram = histograms.get(name);
+    if (histogram==null) {
+      Histogram newHistogram = new Histogram();
+      histogram = histograms.putIfAbsent(name, newHistogram);
+      if (histogram==null) {
+        histogram = newHistogram;
+      }
+    }
+    return histogram;
+  }
+
+  public long getCount(String name) {
+    AtomicLong counter = counters.get(name);
+    return counter!=null ? counter.get() : 0;
+  }
+
+  public Histogram getHistogram(String name) {
+    return histograms.get(name);
+  }
+
+  /** sorted snapshot of the counter values */
+  public Map<String, Long> getCounters() {
+    Map<String, Long> snapshot = new TreeMap<>();
+    for (Map.Entry<String, AtomicLong> entry: counters.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().get());
+    }
+    return snapshot;
+  }
+
+  /** sorted view of the histograms */
+  public Map<String, Histogram> getHistograms() {
+    return new TreeMap<>(histograms);
+  }
+
+  public void reset() {
+    counters.clear();
+    histograms.clear();
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.impl.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.effektif.workflow.api.query.QueryIterator;
+
+
+/**
+ * Lazily maps the elements of an in-memory iterator to query results,
+ * applying skip and limit without copying the source.
+ * 
+ * {@link #map(Object)} returns null for elements that don't match the query.
+ */
+public abstract class MappingQueryIterator<S,T> implements QueryIterator<T> {
+
+  protected Iterator<S> source;
+  protected int skip;
+  protected int limit;
+  protected int count;
+  protected T next;
+
+  public MappingQueryIterator(Iterator<S> source, Integer skip, Integer limit) {
+    this.source = source;
+    this.skip = skip!=null ? skip : 0;
+    this.limit = limit!=null ? limit : Integer.MAX_VALUE;
+  }
+
+  /** @return the query result for the source element or null if it's not included */
+  protected abstract T map(S sourceElement);
+
+  @Override
+  public boolean hasNext() {
+    while (next==null && count<limit && source.hasNext()) {
+      T mapped = map(source.next());
+      if (mapped!=null) {
+        if (skip>0) {
+          skip--;
+        } else {
+          next = mapped;
+        }
+      }
+    }
+    return next!=null;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    T result = next;
+    next = null;
+    count++;
+    return result;
+  }
+
+  @Override
+  public void close() {
+    source = null;
+    next = null;
+    count = limit;
+  }
+}
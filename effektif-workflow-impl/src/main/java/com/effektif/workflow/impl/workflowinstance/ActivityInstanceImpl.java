@@ -68,6 +68,9 @@ public class ActivityInstanceImpl extends ScopeInstanceImpl {
   public String workState;
   public WorkflowInstanceId calledWorkflowInstanceId;
   public List<String> transitionsTaken;
+  /** true when a store has moved this ended activity instance out of 
+   * the persisted workflow instance so that it isn't written again */
+  public boolean isArchived;
 
   public ActivityInstanceImpl() {
   }
@@ -291,8 +294,42 @@ public class ActivityInstanceImpl extends ScopeInstanceImpl {
 
   public void setCalledWorkflowInstanceId(WorkflowInstanceId calledWorkflowInstanceId) {
     this.calledWorkflowInstanceId = calledWorkflowInstanceId;
+    if (updates!=null) {
+      getUpdates().isCalledWorkflowInstanceIdChanged = true;
+      if (parent!=null) {
+        parent.propagateActivityInstanceChange();
+      }
+    }
   }
   
+  @Override
+  public void setProperty(String key, Object value) {
+    super.setProperty(key, value);
+    propagatePropertiesChange();
+  }
+
+  @Override
+  public void setProperties(Map<String, Object> properties) {
+    super.setProperties(properties);
+    propagatePropertiesChange();
+  }
+
+  @Override
+  public Object removeProperty(String key) {
+    Object value = super.removeProperty(key);
+    propagatePropertiesChange();
+    return value;
+  }
+
+  protected void propagatePropertiesChange() {
+    if (updates!=null) {
+      getUpdates().isPropertiesChanged = true;
+      if (parent!=null) {
+        parent.propagateActivityInstanceChange();
+      }
+    }
+  }
+
   public WorkflowInstanceId getCalledWorkflowInstanceId() {
     return calledWorkflowInstanceId;
   }
@@ -23,6 +23,8 @@ public class ActivityInstanceUpdates extends ScopeInstanceUpdates {
 
   public boolean isWorkStateChanged;
   public boolean isTransitionsTakenChanged;
+  public boolean isCalledWorkflowInstanceIdChanged;
+  public boolean isPropertiesChanged;
 
   public ActivityInstanceUpdates(boolean isNew) {
     this.isNew = isNew;
@@ -32,5 +34,18 @@ public class ActivityInstanceUpdates extends ScopeInstanceUpdates {
     super.reset(isNew);
     isWorkStateChanged = false;
     isTransitionsTakenChanged = false;
+    isCalledWorkflowInstanceIdChanged = false;
+    isPropertiesChanged = false;
+  }
+
+  public boolean isChanged() {
+    return isNew
+           || isEndChanged
+           || isActivityInstancesChanged
+           || isVariableInstancesChanged
+           || isWorkStateChanged
+           || isTransitionsTakenChanged
+           || isCalledWorkflowInstanceIdChanged
+           || isPropertiesChanged;
   }
 }
@@ -117,9 +117,7 @@ public abstract class ScopeInstanceImpl extends BaseInstanceImpl {
     activityInstance.start = Time.now();
     if (updates!=null) {
       activityInstance.updates = new ActivityInstanceUpdates(true);
-      if (parent!=null) {
-        parent.propagateActivityInstanceChange();
-      }
+      propagateActivityInstanceChange();
     }
     addActivityInstance(activityInstance);
     activityInstance.initializeScopeInstance();
@@ -575,6 +573,12 @@ public abstract class ScopeInstanceImpl extends BaseInstanceImpl {
     if (this.end==null) {
       this.end = Time.now();
       this.endState = ScopeInstance.ENDSTATE_CANCELED;
+      if (updates!=null) {
+        updates.isEndChanged = true;
+        if (parent!=null) {
+          parent.propagateActivityInstanceChange();
+        }
+      }
       if (activityInstances!=null) {
         for (ActivityInstanceImpl activityInstance: activityInstances) {
           activityInstance.cancel();
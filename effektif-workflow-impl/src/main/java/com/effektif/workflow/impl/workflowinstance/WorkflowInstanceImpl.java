@@ -36,6 +36,8 @@ import com.effektif.workflow.api.model.TriggerInstance;
 import com.effektif.workflow.api.model.WorkflowInstanceId;
 import com.effektif.workflow.api.query.WorkflowInstanceQuery;
 import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
+import com.effektif.workflow.impl.FlushMode;
+import com.effektif.workflow.impl.WorkflowEngineConfiguration;
 import com.effektif.workflow.impl.WorkflowEngineImpl;
 import com.effektif.workflow.impl.WorkflowInstanceStore;
 import com.effektif.workflow.impl.activity.ActivityType;
@@ -68,6 +70,15 @@ public class WorkflowInstanceImpl extends ScopeInstanceImpl {
   public Long nextTimerInstanceId;
   public List<Job> jobs;
   public List<UnlockListener> unlockListeners;
+  /** steps executed since the last flush, used by the {@link FlushMode} */
+  public int stepsSinceFlush;
+  public long lastFlushTime;
+  /** true while a bulk start runs the synchronous work before the workflow 
+   * instance is inserted, flushes are skipped as the insert writes everything */
+  public boolean isInsertPending;
+  /** true while a group of messages is applied, flushes are skipped till the 
+   * group is complete so that either all of the group's updates are saved or none */
+  public boolean isFlushDeferred;
 
   /**
    * local cache of the locked workflow instance for the purpose of the call
@@ -138,6 +149,43 @@ public class WorkflowInstanceImpl extends ScopeInstanceImpl {
   }
 
   public void executeWork() {
+    executeSynchronousWork();
+    if (hasAsyncWork()) {
+      if (log.isDebugEnabled())
+        log.debug("Going asynchronous " + this);
+      flushDbUpdates();
+      Runnable asyncContinuation = new Runnable() {
+        public void run() {
+          try {
+            work = workAsync;
+            workAsync = null;
+            isAsync = true;
+            if (updates != null) {
+              getUpdates().isWorkChanged = true;
+              getUpdates().isAsyncWorkChanged = true;
+            }
+            executeWork();
+          } catch (Throwable e) {
+            log.error("in workflow execution", e);
+          }
+        }
+      };
+      WorkflowEngineImpl workflowEngine = configuration.get(WorkflowEngineImpl.class);
+      workflowEngine.executeAsync(asyncContinuation);
+    } else {
+      WorkflowInstanceStore workflowInstanceStore = configuration.get(WorkflowInstanceStore.class);
+      workflowInstanceStore.flushAndUnlock(this);
+    }
+  }
+
+  /** executes the synchronous work without flushing the end state and 
+   * without releasing the lock, so that more operations can be 
+   * applied to this workflow instance before {@link #executeWork()} 
+   * completes the lock cycle. */
+  public void executeSynchronousWork() {
+    WorkflowEngineConfiguration engineConfiguration = configuration.get(WorkflowEngineConfiguration.class);
+    lastFlushTime = System.currentTimeMillis();
+    stepsSinceFlush = 0;
     boolean isFirst = true;
     while (hasWork()) {
       ActivityInstanceImpl activityInstance = getNextWork();
@@ -146,11 +194,14 @@ public class WorkflowInstanceImpl extends ScopeInstanceImpl {
 
       // in the first iteration, the updates will be empty and hence no updates
       // will be flushed
+      // when the flush mode skips a flush, the dirty flags keep accumulating
+      // so that the next flush combines the updates of all steps in between
       if (isFirst || activityType.isFlushSkippable()) {
         isFirst = false;
-      } else {
+      } else if (!isInsertPending && !isFlushDeferred && isFlushDue(engineConfiguration)) {
         flushDbUpdates();
       }
+      stepsSinceFlush++;
 
       if (STATE_STARTING.equals(activityInstance.workState)) {
         if (log.isDebugEnabled())
@@ -203,33 +254,6 @@ public class WorkflowInstanceImpl extends ScopeInstanceImpl {
         }
       }
     }
-    if (hasAsyncWork()) {
-      if (log.isDebugEnabled())
-        log.debug("Going asynchronous " + this);
-      flushDbUpdates();
-      Runnable asyncContinuation = new Runnable() {
-        public void run() {
-          try {
-            work = workAsync;
-            workAsync = null;
-            isAsync = true;
-            if (updates != null) {
-              getUpdates().isWorkChanged = true;
-              getUpdates().isAsyncWorkChanged = true;
-            }
-            executeWork();
-          } catch (Throwable e) {
-            log.error("in workflow execution", e);
-          }
-        }
-      };
-      WorkflowEngineImpl workflowEngine = configuration.get(WorkflowEngineImpl.class);
-      workflowEngine.executeAsync(asyncContinuation);
-    } else {
-      WorkflowInstanceStore workflowInstanceStore = configuration.get(WorkflowInstanceStore.class);
-      workflowInstanceStore.flushAndUnlock(this);
-      workflow.workflowEngine.notifyUnlocked(this);
-    }
   }
 
   public void cancel() {
@@ -243,10 +267,24 @@ public class WorkflowInstanceImpl extends ScopeInstanceImpl {
     }
   }
 
+  protected boolean isFlushDue(WorkflowEngineConfiguration engineConfiguration) {
+    FlushMode flushMode = engineConfiguration.getFlushMode();
+    if (flushMode==FlushMode.BOUNDARIES) {
+      return false;
+    }
+    if (flushMode==FlushMode.INTERVAL) {
+      return stepsSinceFlush >= engineConfiguration.getFlushStepInterval()
+             || System.currentTimeMillis()-lastFlushTime >= engineConfiguration.getFlushTimeInterval();
+    }
+    return true;
+  }
+
   protected void flushDbUpdates() {
     workflow.workflowEngine.notifyFlush(this);
     WorkflowInstanceStore workflowInstanceStore = configuration.get(WorkflowInstanceStore.class);
     workflowInstanceStore.flush(this);
+    stepsSinceFlush = 0;
+    lastFlushTime = System.currentTimeMillis();
   }
 
   public void addLockedWorkflowInstance(WorkflowInstanceImpl lockedWorkflowInstance) {
@@ -515,9 +553,14 @@ public class WorkflowInstanceImpl extends ScopeInstanceImpl {
     unlockListeners.add(unlockListener);
   }
 
+  /** to be called by the stores on every unlock, also when the lock is 
+   * handed off or released after an error. */
   public void notifyUnlockListeners() {
+    WorkflowEngineImpl workflowEngine = configuration.get(WorkflowEngineImpl.class);
+    // before the next local lock request is woken up, which starts a new lock cycle
+    workflowEngine.notifyUnlocked(this);
+    workflowEngine.unlocked(id);
     if (unlockListeners!=null) {
-      WorkflowEngineImpl workflowEngine = configuration.get(WorkflowEngineImpl.class);
       for (final UnlockListener unlockListener: unlockListeners) {
         workflowEngine.executeAsync(new Runnable() {
           @Override
@@ -31,6 +31,7 @@ import com.effektif.workflow.impl.job.AbstractJobType;
 import com.effektif.workflow.impl.job.Job;
 import com.effektif.workflow.impl.job.JobController;
 import com.effektif.workflow.impl.job.JobExecution;
+import com.effektif.workflow.impl.job.JobServiceImpl;
 import com.effektif.workflow.impl.util.Time;
 import com.effektif.workflow.test.JobWorkflowTest;
 
@@ -217,6 +218,27 @@ public class JobServiceTest extends JobWorkflowTest {
     assertTrue(jobExecution.job.dead);
   }
 
+  @Test
+  public void testJobsAreClaimedInBatches() throws Exception {
+    for (int i=0; i<5; i++) {
+      jobService.saveJob(new Job()
+        .jobType(new TestJob())
+        .dueDate(Time.now()));
+    }
+
+    JobServiceImpl jobServiceImpl = (JobServiceImpl) jobService;
+    int maxJobClaimBatchSize = jobServiceImpl.maxJobClaimBatchSize;
+    jobServiceImpl.maxJobClaimBatchSize = 2;
+    try {
+      assertEquals(2, jobStore.lockNextJobs(2).size());
+      checkJobs();
+      assertEquals(3, TestJob.jobExecutions.size());
+      assertTrue(jobStore.lockNextJobs(2).isEmpty());
+    } finally {
+      jobServiceImpl.maxJobClaimBatchSize = maxJobClaimBatchSize;
+    }
+  }
+
   @Test
   public void testUniqueJob() throws Exception {
     jobService.saveJob(new Job()
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.api;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.effektif.workflow.api.activities.ReceiveTask;
+import com.effektif.workflow.api.model.Message;
+import com.effektif.workflow.api.model.MessageResult;
+import com.effektif.workflow.api.workflow.ExecutableWorkflow;
+import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
+import com.effektif.workflow.test.WorkflowTest;
+
+
+public class SendAllTest extends WorkflowTest {
+
+  @Test
+  public void testSendAllGroupsByWorkflowInstance() {
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .activity("one", new ReceiveTask())
+      .activity("two", new ReceiveTask());
+
+    deploy(workflow);
+    WorkflowInstance first = start(workflow);
+    WorkflowInstance second = start(workflow);
+
+    List<Message> messages = new ArrayList<>();
+    messages.add(message(first, "one"));
+    messages.add(message(second, "two"));
+    messages.add(message(first, "two"));
+    messages.add(new Message()
+      .workflowInstanceId(second.getId())
+      .activityInstanceId("unexisting"));
+
+    List<MessageResult> results = workflowEngine.sendAll(messages);
+
+    assertEquals(4, results.size());
+    assertTrue(results.get(0).isSuccess());
+    assertTrue(results.get(1).isSuccess());
+    assertTrue(results.get(2).isSuccess());
+    assertFalse(results.get(3).isSuccess());
+    assertNull(results.get(3).getWorkflowInstance());
+    assertSame(messages.get(3), results.get(3).getMessage());
+
+    // both messages for the first instance were applied in the same lock cycle
+    assertTrue(results.get(2).getWorkflowInstance().isEnded());
+    assertOpen(results.get(1).getWorkflowInstance(), "one");
+  }
+
+  protected Message message(WorkflowInstance workflowInstance, String activityId) {
+    return new Message()
+      .workflowInstanceId(workflowInstance.getId())
+      .activityInstanceId(getActivityInstanceId(workflowInstance, activityId));
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.api;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.effektif.workflow.api.activities.ReceiveTask;
+import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.query.QueryIterator;
+import com.effektif.workflow.api.query.WorkflowInstanceQuery;
+import com.effektif.workflow.api.workflow.ExecutableWorkflow;
+import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
+import com.effektif.workflow.test.WorkflowTest;
+
+
+public class WorkflowInstanceQueryTest extends WorkflowTest {
+
+  @Test
+  public void testQueryFields() {
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .activity("one", new ReceiveTask());
+
+    deploy(workflow);
+    WorkflowInstance workflowInstance = workflowEngine.start(createTriggerInstance(workflow)
+      .businessKey("order-12"));
+
+    List<WorkflowInstance> workflowInstances = workflowEngine.findWorkflowInstances(new WorkflowInstanceQuery()
+      .workflowInstanceId(workflowInstance.getId())
+      .fields(WorkflowInstanceQuery.FIELD_BUSINESS_KEY, 
+              WorkflowInstanceQuery.FIELD_START,
+              WorkflowInstanceQuery.FIELD_ACTIVITY_INSTANCES));
+
+    assertEquals(1, workflowInstances.size());
+    WorkflowInstance summary = workflowInstances.get(0);
+    assertEquals(workflowInstance.getId(), summary.getId());
+    assertEquals("order-12", summary.getBusinessKey());
+    assertNotNull(summary.getStart());
+    assertOpen(summary, "one");
+  }
+
+  @Test
+  public void testIterateWorkflowInstances() {
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .activity("one", new ReceiveTask());
+
+    deploy(workflow);
+    for (int i=0; i<5; i++) {
+      start(workflow);
+    }
+
+    List<WorkflowInstanceId> workflowInstanceIds = new ArrayList<>();
+    try (QueryIterator<WorkflowInstance> iterator = workflowEngine.iterateWorkflowInstances(new WorkflowInstanceQuery()
+          .skip(1)
+          .limit(3)
+          .batchSize(2))) {
+      while (iterator.hasNext()) {
+        WorkflowInstance workflowInstance = iterator.next();
+        assertOpen(workflowInstance, "one");
+        workflowInstanceIds.add(workflowInstance.getId());
+      }
+    }
+    assertEquals(3, workflowInstanceIds.size());
+    assertEquals(3, new HashSet<>(workflowInstanceIds).size());
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import com.effektif.workflow.api.activities.ReceiveTask;
+import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.workflow.ExecutableWorkflow;
+import com.effektif.workflow.impl.WorkflowEngineImpl;
+import com.effektif.workflow.impl.WorkflowInstanceStore;
+import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
+import com.effektif.workflow.test.WorkflowTest;
+
+
+public class AsyncLockTest extends WorkflowTest {
+
+  @Test
+  public void testWaitForLocalUnlock() throws Exception {
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .activity("r", new ReceiveTask());
+    deploy(workflow);
+    WorkflowInstanceId workflowInstanceId = start(workflow).getId();
+
+    WorkflowEngineImpl workflowEngineImpl = (WorkflowEngineImpl) workflowEngine;
+    WorkflowInstanceStore workflowInstanceStore = configuration.get(WorkflowInstanceStore.class);
+    WorkflowInstanceImpl lockedWorkflowInstance = workflowEngineImpl.lockWorkflowInstanceWithRetry(workflowInstanceId);
+
+    CompletableFuture<WorkflowInstanceImpl> lockFuture = workflowEngineImpl.lockWorkflowInstanceAsync(workflowInstanceId);
+    assertFalse(lockFuture.isDone());
+    assertEquals(1, workflowEngineImpl.getLockWaiterCount(workflowInstanceId));
+
+    workflowInstanceStore.unlockWorkflowInstance(lockedWorkflowInstance);
+
+    // the test configuration uses a synchronous executor so the waiter is woken in the unlock 
+    assertTrue(lockFuture.isDone());
+    WorkflowInstanceImpl workflowInstance = lockFuture.get();
+    assertNotNull(workflowInstance.lock);
+    assertEquals(0, workflowEngineImpl.getLockWaiterCount(workflowInstanceId));
+
+    workflowInstanceStore.unlockWorkflowInstance(workflowInstance);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.effektif.workflow.impl.AsynchronousExecutorService;
+import com.effektif.workflow.impl.configuration.Brewery;
+import com.effektif.workflow.impl.metrics.MetricsRegistry;
+
+
+public class AsynchronousExecutorServiceTest {
+
+  @Test
+  public void testBoundedQueueAndMetrics() throws Exception {
+    AsynchronousExecutorService executorService = new AsynchronousExecutorService()
+      .corePoolSize(1)
+      .maxPoolSize(1)
+      .queueCapacity(1)
+      .threadNamePrefix("test-pool-");
+    executorService.brew(null);
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+    final AtomicReference<String> poolThreadName = new AtomicReference<>();
+    final AtomicReference<String> rejectedThreadName = new AtomicReference<>();
+
+    // occupies the only thread
+    executorService.execute(new Runnable() {
+      public void run() {
+        poolThreadName.set(Thread.currentThread().getName());
+        await(release);
+        done.countDown();
+      }
+    });
+    // fills the queue
+    executorService.execute(new Runnable() {
+      public void run() {
+        done.countDown();
+      }
+    });
+    while (executorService.getActiveCount()==0) {
+      Thread.sleep(5);
+    }
+    assertEquals(1, executorService.getQueueDepth());
+
+    // the queue is full so the caller runs it
+    executorService.execute(new Runnable() {
+      public void run() {
+        rejectedThreadName.set(Thread.currentThread().getName());
+        done.countDown();
+      }
+    });
+    assertEquals(Thread.currentThread().getName(), rejectedThreadName.get());
+    assertEquals(1, executorService.getRejectedCount());
+
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    executorService.shutdown();
+
+    assertEquals("test-pool-1", poolThreadName.get());
+    assertEquals(3, executorService.getExecutedCount());
+    assertTrue(executorService.getAverageExecutionTime()>0);
+  }
+
+  @Test
+  public void testUnboundedByDefaultWithRegistryMetrics() throws Exception {
+    MetricsRegistry metricsRegistry = new MetricsRegistry();
+    Brewery brewery = new Brewery();
+    brewery.ingredient(metricsRegistry);
+    AsynchronousExecutorService executorService = new AsynchronousExecutorService();
+    executorService.brew(brewery);
+    assertEquals(Integer.MAX_VALUE, executorService.queue.remainingCapacity());
+
+    final CountDownLatch done = new CountDownLatch(1);
+    executorService.execute(new Runnable() {
+      public void run() {
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    executorService.shutdown();
+
+    assertEquals(1, metricsRegistry.getCount("executor.executed"));
+    assertEquals(1, metricsRegistry.getHistogram("executor.executionTime").getCount());
+    assertEquals(1, metricsRegistry.getHistogram("executor.waitTime").getCount());
+  }
+
+  static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
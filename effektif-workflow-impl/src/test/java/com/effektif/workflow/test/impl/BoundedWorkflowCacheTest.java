@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.effektif.workflow.api.model.WorkflowId;
+import com.effektif.workflow.impl.BoundedWorkflowCache;
+import com.effektif.workflow.impl.WorkflowCache;
+import com.effektif.workflow.impl.workflow.WorkflowImpl;
+
+
+public class BoundedWorkflowCacheTest {
+
+  @Test
+  public void testLeastRecentlyUsedEviction() {
+    BoundedWorkflowCache cache = new BoundedWorkflowCache().maxEntries(2);
+    cache.put(createWorkflow("one"));
+    cache.put(createWorkflow("two"));
+    // makes two the least recently used
+    assertNotNull(cache.get(new WorkflowId("one")));
+    cache.put(createWorkflow("three"));
+
+    assertNotNull(cache.get(new WorkflowId("one")));
+    assertNull(cache.get(new WorkflowId("two")));
+    assertNotNull(cache.get(new WorkflowId("three")));
+    assertEquals(2, cache.getSize());
+    assertEquals(1, cache.getEvictions());
+    assertEquals(3, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testWeightBound() {
+    // each empty workflow has weight 1
+    BoundedWorkflowCache cache = new BoundedWorkflowCache().maxWeight(2);
+    cache.put(createWorkflow("one"));
+    cache.put(createWorkflow("two"));
+    cache.put(createWorkflow("three"));
+    assertEquals(2, cache.getSize());
+    assertEquals(2, cache.getWeight());
+    assertNull(cache.get(new WorkflowId("one")));
+  }
+
+  @Test
+  public void testConcurrentMissesLoadOnce() throws Exception {
+    final BoundedWorkflowCache cache = new BoundedWorkflowCache();
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch loadStarted = new CountDownLatch(1);
+    final CountDownLatch releaseLoad = new CountDownLatch(1);
+    final WorkflowCache.Loader loader = new WorkflowCache.Loader() {
+      @Override
+      public WorkflowImpl load(WorkflowId workflowId) {
+        loads.incrementAndGet();
+        loadStarted.countDown();
+        try {
+          releaseLoad.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return createWorkflow(workflowId.getInternal());
+      }
+    };
+
+    final List<WorkflowImpl> results = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i=0; i<5; i++) {
+      Thread thread = new Thread() {
+        public void run() {
+          WorkflowImpl workflow = cache.get(new WorkflowId("w"), loader);
+          synchronized (results) {
+            results.add(workflow);
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+    loadStarted.await();
+    // give the other threads the time to miss as well 
+    Thread.sleep(50);
+    releaseLoad.countDown();
+    for (Thread thread: threads) {
+      thread.join();
+    }
+
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getLoadCount());
+    assertEquals(5, results.size());
+    for (WorkflowImpl workflow: results) {
+      assertSame(results.get(0), workflow);
+    }
+  }
+
+  static WorkflowImpl createWorkflow(String id) {
+    WorkflowImpl workflow = new WorkflowImpl();
+    workflow.id = new WorkflowId(id);
+    return workflow;
+  }
+}
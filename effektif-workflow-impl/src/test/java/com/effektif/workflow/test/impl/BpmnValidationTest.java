@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.effektif.workflow.api.activities.StartEvent;
+import com.effektif.workflow.api.workflow.ExecutableWorkflow;
+import com.effektif.workflow.impl.bpmn.Bpmn;
+import com.effektif.workflow.impl.bpmn.BpmnSchemaValidationError;
+import com.effektif.workflow.impl.bpmn.xml.XmlParsingError;
+import com.effektif.workflow.test.serialization.BpmnTest;
+
+
+public class BpmnValidationTest {
+
+  @Test
+  public void testErrorsAreReportedSeparately() {
+    String bpmn = BpmnTest.getBpmnMapper()
+      .writeToString(new ExecutableWorkflow()
+        .activity("s", new StartEvent()));
+    Bpmn.validate(bpmn);
+
+    try {
+      Bpmn.validate("<definitions xmlns=\""+Bpmn.BPMN_URI+"\">");
+      fail("expected XmlParsingError");
+    } catch (XmlParsingError e) {
+      // expected
+    }
+
+    try {
+      Bpmn.validate("<definitions xmlns=\""+Bpmn.BPMN_URI+"\"><unknown/></definitions>");
+      fail("expected BpmnSchemaValidationError");
+    } catch (BpmnSchemaValidationError e) {
+      // expected
+    }
+
+    // the validators that reported the errors are reused
+    Bpmn.validate(bpmn);
+    Bpmn.validateSchema(bpmn);
+    Bpmn.validateWellFormed(bpmn);
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.effektif.workflow.impl.configuration.Brewery;
+
+
+public class BreweryTest {
+
+  public interface Service {
+  }
+
+  public static class DefaultService implements Service {
+  }
+
+  public static class NamedService implements Service {
+  }
+
+  @Test
+  public void testLookingUpANamedIngredientDoesntAliasItsType() {
+    Brewery brewery = new Brewery();
+    DefaultService defaultService = new DefaultService();
+    NamedService namedService = new NamedService();
+    brewery.ingredient(defaultService);
+    brewery.ingredient(namedService, "namedService");
+
+    assertSame(namedService, brewery.get("namedService"));
+    // the lookup by name must not make the named ingredient the one for its type
+    assertSame(defaultService, brewery.get(Service.class));
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.effektif.workflow.api.activities.ReceiveTask;
+import com.effektif.workflow.api.model.TriggerInstance;
+import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.query.WorkflowInstanceQuery;
+import com.effektif.workflow.api.workflow.ExecutableWorkflow;
+import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
+import com.effektif.workflow.impl.BulkStartResult;
+import com.effektif.workflow.impl.WorkflowEngineConfiguration;
+import com.effektif.workflow.impl.WorkflowEngineImpl;
+import com.effektif.workflow.impl.memory.MemoryWorkflowInstanceStore;
+import com.effektif.workflow.impl.memory.TestConfiguration;
+import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
+import com.effektif.workflow.test.WorkflowTest;
+
+
+public class BulkStartTest extends WorkflowTest {
+
+  /** rejects workflow instance ids that already exist, like a unique index does */
+  public static class UniqueIdWorkflowInstanceStore extends MemoryWorkflowInstanceStore {
+    @Override
+    public Map<Integer, String> insertWorkflowInstances(List<WorkflowInstanceImpl> workflowInstances) {
+      Map<Integer, String> insertErrors = new HashMap<>();
+      for (int i=0; i<workflowInstances.size(); i++) {
+        WorkflowInstanceImpl workflowInstance = workflowInstances.get(i);
+        if (this.workflowInstances.containsKey(workflowInstance.id)) {
+          insertErrors.put(i, "Duplicate workflow instance id "+workflowInstance.id);
+        } else {
+          insertWorkflowInstance(workflowInstance);
+        }
+      }
+      return insertErrors;
+    }
+  }
+
+  @After
+  public void resetBatchSize() {
+    configuration.get(WorkflowEngineConfiguration.class).setBulkStartBatchSize(1000);
+  }
+
+  @Test
+  public void testStartAll() {
+    configuration.get(WorkflowEngineConfiguration.class).setBulkStartBatchSize(2);
+
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .activity("a", msgValue("a").transitionTo("r"))
+      .activity("r", new ReceiveTask());
+    deploy(workflow);
+
+    List<TriggerInstance> triggerInstances = new ArrayList<>();
+    for (int i=0; i<5; i++) {
+      triggerInstances.add(new TriggerInstance());
+    }
+    WorkflowEngineImpl workflowEngineImpl = configuration.get(WorkflowEngineImpl.class);
+    BulkStartResult result = workflowEngineImpl.startAll(workflow.getId(), triggerInstances);
+
+    assertEquals(5, result.getStartedCount());
+    assertTrue(result.getErrors().isEmpty());
+    assertEquals(5, result.getWorkflowInstanceIds().size());
+    assertEquals("a", getMessage(4));
+
+    for (WorkflowInstanceId workflowInstanceId: result.getWorkflowInstanceIds()) {
+      List<WorkflowInstance> workflowInstances = workflowEngine.findWorkflowInstances(new WorkflowInstanceQuery()
+        .workflowInstanceId(workflowInstanceId));
+      assertEquals(1, workflowInstances.size());
+      assertOpen(workflowInstances.get(0), "r");
+    }
+
+    // the workflow instances were inserted unlocked
+    WorkflowInstance workflowInstance = workflowEngine.findWorkflowInstances(new WorkflowInstanceQuery()
+      .workflowInstanceId(result.getWorkflowInstanceIds().get(3))).get(0);
+    workflowInstance = endTask(workflowInstance, "r");
+    assertTrue(workflowInstance.isEnded());
+  }
+
+  @Test
+  public void testOnlyTheDuplicateIdFails() {
+    TestConfiguration configuration = new TestConfiguration();
+    configuration.registerIngredient(new UniqueIdWorkflowInstanceStore());
+    configuration.start();
+    WorkflowEngineImpl workflowEngineImpl = configuration.get(WorkflowEngineImpl.class);
+
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .activity("r", new ReceiveTask());
+    workflow.setId(workflowEngineImpl.deployWorkflow(workflow).checkNoErrors().getWorkflowId());
+
+    WorkflowInstanceId duplicateId = new WorkflowInstanceId("duplicate");
+    List<TriggerInstance> triggerInstances = new ArrayList<>();
+    for (int i=0; i<3; i++) {
+      TriggerInstance triggerInstance = new TriggerInstance();
+      if (i<2) {
+        triggerInstance.setWorkflowInstanceId(duplicateId);
+      }
+      triggerInstances.add(triggerInstance);
+    }
+    BulkStartResult result = workflowEngineImpl.startAll(workflow.getId(), triggerInstances);
+
+    assertEquals(2, result.getStartedCount());
+    assertEquals(1, result.getErrors().size());
+    assertTrue(result.getErrors().containsKey(1));
+    assertEquals(duplicateId, result.getWorkflowInstanceIds().get(0));
+    assertNull(result.getWorkflowInstanceIds().get(1));
+  }
+}
@@ -46,6 +46,7 @@ import com.effektif.workflow.api.types.TextType;
 import com.effektif.workflow.api.workflow.ExecutableWorkflow;
 import com.effektif.workflow.impl.WorkflowEngineImpl;
 import com.effektif.workflow.impl.WorkflowParser;
+import com.effektif.workflow.impl.conditions.ConditionContext;
 import com.effektif.workflow.impl.conditions.ConditionImpl;
 import com.effektif.workflow.impl.conditions.ConditionService;
 import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
@@ -315,6 +316,20 @@ public class ConditionsTest extends WorkflowTest {
     assertTrue(evaluateTextExpression(new NotEqualsIgnoreCase(), "hello\nworld", "helloworld"));
   }
 
+  @Test
+  public void testConditionContextResolvesEachExpressionOnce() {
+    WorkflowInstanceImpl workflowInstance = startInitialize(NumberType.INSTANCE, "n", 5);
+    ConditionImpl greaterThan = compile(new GreaterThan().leftExpression("n").rightValue(3));
+    ConditionImpl lessThan = compile(new LessThan().leftExpression("n").rightValue(10));
+
+    ConditionContext conditionContext = new ConditionContext(workflowInstance);
+    assertTrue(greaterThan.eval(conditionContext));
+    workflowInstance.setVariableValue("n", 20);
+    // the second condition reuses the value that was resolved for the first one
+    assertTrue(lessThan.eval(conditionContext));
+    assertFalse(lessThan.eval(workflowInstance));
+  }
+
   private boolean evaluateNumberExpression(Comparator condition, Number leftValue, Number rightValue) {
     return evaluate(NumberType.INSTANCE, "n", leftValue, condition.leftExpression("n").rightValue(rightValue));
   }
@@ -324,6 +339,12 @@ public class ConditionsTest extends WorkflowTest {
   }
 
   private boolean evaluate(DataType type, String variableId, Object value, Condition condition) {
+    WorkflowInstanceImpl workflowInstance = startInitialize(type, variableId, value);
+    ConditionImpl conditionImpl = compile(condition);
+    return conditionImpl.eval(workflowInstance);
+  }
+
+  private WorkflowInstanceImpl startInitialize(DataType type, String variableId, Object value) {
     ExecutableWorkflow workflow = new ExecutableWorkflow()
       .variable(variableId, type);
     
@@ -334,12 +355,13 @@ public class ConditionsTest extends WorkflowTest {
       .workflowId(workflow.getId());
     
     WorkflowEngineImpl workflowEngineImpl = (WorkflowEngineImpl) workflowEngine;
-    WorkflowInstanceImpl workflowInstance = workflowEngineImpl.startInitialize(triggerInstance);
-  
+    return workflowEngineImpl.startInitialize(triggerInstance);
+  }
+
+  private ConditionImpl compile(Condition condition) {
     ConditionService conditionService = configuration.get(ConditionService.class);
     WorkflowParser workflowParser = new WorkflowParser(configuration);
     workflowParser.pushContext("condition", null, null, null);
-    ConditionImpl conditionImpl = conditionService.compile(condition, workflowParser);
-    return conditionImpl.eval(workflowInstance);
+    return conditionService.compile(condition, workflowParser);
   }
 }
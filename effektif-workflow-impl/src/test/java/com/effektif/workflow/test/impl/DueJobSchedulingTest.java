@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import com.effektif.workflow.api.json.TypeName;
+import com.effektif.workflow.impl.job.AbstractJobType;
+import com.effektif.workflow.impl.job.Job;
+import com.effektif.workflow.impl.job.JobController;
+import com.effektif.workflow.impl.job.JobServiceImpl;
+import com.effektif.workflow.impl.memory.TestConfiguration;
+import com.effektif.workflow.impl.util.Time;
+
+
+public class DueJobSchedulingTest {
+
+  @TypeName("dueJobScheduling")
+  public static class LatchJob extends AbstractJobType {
+    static CountDownLatch executed;
+    static long executionTime;
+    @Override
+    public void execute(JobController jobController) {
+      executionTime = System.currentTimeMillis();
+      executed.countDown();
+    }
+  }
+
+  @Test
+  public void testJobIsExecutedWhenDueWithoutPolling() throws Exception {
+    Time.now = null;
+    TestConfiguration configuration = new TestConfiguration();
+    configuration.start();
+    JobServiceImpl jobService = configuration.get(JobServiceImpl.class);
+    // polling alone would only find the job after an hour
+    jobService.checkInterval = 60*60*1000;
+    jobService.startup();
+    try {
+      LatchJob.executed = new CountDownLatch(1);
+      LocalDateTime dueDate = new LocalDateTime().plusMillis(1000);
+      jobService.saveJob(new Job()
+        .jobType(new LatchJob())
+        .dueDate(dueDate));
+
+      assertTrue(LatchJob.executed.await(5, TimeUnit.SECONDS));
+      assertTrue(LatchJob.executionTime>=dueDate.toDate().getTime());
+    } finally {
+      jobService.shutdown();
+    }
+  }
+
+  @Test
+  public void testFarFutureJobIsLeftToPolling() throws Exception {
+    Time.now = null;
+    TestConfiguration configuration = new TestConfiguration();
+    configuration.start();
+    JobServiceImpl jobService = configuration.get(JobServiceImpl.class);
+    jobService.checkInterval = 60*1000;
+    jobService.startup();
+    try {
+      LatchJob.executed = new CountDownLatch(1);
+      jobService.saveJob(new Job()
+        .jobType(new LatchJob())
+        .dueDate(new LocalDateTime().plusHours(1)));
+      assertEquals(0, jobService.getScheduledCheckCount());
+
+      jobService.saveJob(new Job()
+        .jobType(new LatchJob())
+        .dueDate(new LocalDateTime().plusMillis(30*1000)));
+      assertEquals(1, jobService.getScheduledCheckCount());
+    } finally {
+      jobService.shutdown();
+    }
+  }
+}
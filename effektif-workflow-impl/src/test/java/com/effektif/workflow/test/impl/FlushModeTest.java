@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.effektif.workflow.api.activities.ReceiveTask;
+import com.effektif.workflow.api.model.Message;
+import com.effektif.workflow.api.model.MessageResult;
+import com.effektif.workflow.api.workflow.ExecutableWorkflow;
+import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
+import com.effektif.workflow.impl.FlushMode;
+import com.effektif.workflow.impl.WorkflowEngineConfiguration;
+import com.effektif.workflow.impl.WorkflowEngineImpl;
+import com.effektif.workflow.impl.WorkflowExecutionListener;
+import com.effektif.workflow.impl.workflow.TransitionImpl;
+import com.effektif.workflow.impl.workflowinstance.ActivityInstanceImpl;
+import com.effektif.workflow.impl.workflowinstance.WorkflowInstanceImpl;
+import com.effektif.workflow.test.WorkflowTest;
+
+
+public class FlushModeTest extends WorkflowTest {
+  
+  private class FlushCounter implements WorkflowExecutionListener {
+    int flushes = 0;
+    @Override
+    public void flush(WorkflowInstanceImpl workflowInstance) {
+      flushes++;
+    }
+    @Override
+    public boolean starting(ActivityInstanceImpl activityInstance) {
+      return true;
+    }
+    @Override
+    public void ended(ActivityInstanceImpl activityInstance) {
+    }
+    @Override
+    public boolean transitioning(ActivityInstanceImpl from, TransitionImpl transition, ActivityInstanceImpl to) {
+      return true;
+    }
+    @Override
+    public void insert(WorkflowInstanceImpl workflowInstance) {
+    }
+    @Override
+    public void starting(WorkflowInstanceImpl workflowInstance) {
+    }
+    @Override
+    public void ended(WorkflowInstanceImpl workflowInstance) {
+    }
+    @Override
+    public void unlocked(WorkflowInstanceImpl workflowInstance) {
+    }
+  }
+
+  FlushCounter flushCounter;
+  WorkflowEngineConfiguration engineConfiguration;
+
+  @Override
+  @Before
+  public void initializeWorkflowEngine() {
+    super.initializeWorkflowEngine();
+    flushCounter = new FlushCounter();
+    ((WorkflowEngineImpl) workflowEngine).addWorkflowExecutionListener(flushCounter);
+    engineConfiguration = configuration.get(WorkflowEngineConfiguration.class);
+  }
+
+  @After
+  public void resetFlushMode() {
+    ((WorkflowEngineImpl) workflowEngine).removeWorkflowExecutionListener(flushCounter);
+    engineConfiguration.setFlushMode(FlushMode.EVERY_STEP);
+    engineConfiguration.setFlushStepInterval(10);
+    engineConfiguration.setFlushTimeInterval(1000);
+  }
+
+  @Test
+  public void testEveryStep() {
+    startFiveSteps();
+    // a flush before every step except the first, 
+    // including the propagation of the end of e to the workflow instance
+    assertEquals(5, flushCounter.flushes);
+  }
+
+  @Test
+  public void testBoundaries() {
+    engineConfiguration.setFlushMode(FlushMode.BOUNDARIES);
+    startFiveSteps();
+    assertEquals(0, flushCounter.flushes);
+    assertEquals("a", getMessage(0));
+    assertEquals("e", getMessage(4));
+  }
+
+  @Test
+  public void testStepInterval() {
+    engineConfiguration.setFlushMode(FlushMode.INTERVAL);
+    engineConfiguration.setFlushStepInterval(2);
+    engineConfiguration.setFlushTimeInterval(Long.MAX_VALUE);
+    startFiveSteps();
+    assertEquals(2, flushCounter.flushes);
+  }
+
+  @Test
+  public void testMessageGroupIsNotFlushedInBetween() {
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .activity("r1", new ReceiveTask().transitionTo("a"))
+      .activity("a", msgValue("a").transitionTo("b"))
+      .activity("b", msgValue("b"))
+      .activity("r2", new ReceiveTask());
+    deploy(workflow);
+    WorkflowInstance workflowInstance = start(workflow);
+    flushCounter.flushes = 0;
+
+    List<MessageResult> results = workflowEngine.sendAll(Arrays.asList(
+      new Message()
+        .workflowInstanceId(workflowInstance.getId())
+        .activityInstanceId(getActivityInstanceId(workflowInstance, "r1")),
+      new Message()
+        .workflowInstanceId(workflowInstance.getId())
+        .activityInstanceId(getActivityInstanceId(workflowInstance, "r2"))));
+
+    assertTrue(results.get(0).isSuccess());
+    assertTrue(results.get(1).isSuccess());
+    // the group's updates are only saved when the lock is released
+    assertEquals(0, flushCounter.flushes);
+    assertTrue(results.get(1).getWorkflowInstance().isEnded());
+  }
+
+  protected void startFiveSteps() {
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .activity("a", msgValue("a").transitionTo("b"))
+      .activity("b", msgValue("b").transitionTo("c"))
+      .activity("c", msgValue("c").transitionTo("d"))
+      .activity("d", msgValue("d").transitionTo("e"))
+      .activity("e", msgValue("e"));
+    deploy(workflow);
+    start(workflow);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.effektif.workflow.api.json.TypeName;
+import com.effektif.workflow.impl.ExecutorService;
+import com.effektif.workflow.impl.WorkflowEngineImpl;
+import com.effektif.workflow.impl.job.AbstractJobType;
+import com.effektif.workflow.impl.job.Job;
+import com.effektif.workflow.impl.job.JobController;
+import com.effektif.workflow.impl.job.JobServiceImpl;
+import com.effektif.workflow.impl.job.JobStore;
+import com.effektif.workflow.impl.memory.TestConfiguration;
+import com.effektif.workflow.impl.util.Time;
+
+
+public class JobBackpressureTest {
+
+  @TypeName("backpressure")
+  public static class CountingJob extends AbstractJobType {
+    static int executions;
+    @Override
+    public void execute(JobController jobController) {
+      executions++;
+    }
+  }
+
+  /** keeps the commands in a queue till the test runs them */
+  public static class QueueingExecutorService implements ExecutorService {
+    List<Runnable> queue = new ArrayList<>();
+    boolean isShutdown;
+    public void startup() {
+    }
+    public void shutdown() {
+      isShutdown = true;
+    }
+    public int getQueueDepth() {
+      return queue.size();
+    }
+    public void execute(Runnable command) {
+      queue.add(command);
+    }
+    public void runNext() {
+      queue.remove(0).run();
+    }
+  }
+
+  @Test
+  public void testClaimingPausesAboveHighWaterMark() throws Exception {
+    Time.now = null;
+    CountingJob.executions = 0;
+    QueueingExecutorService executor = new QueueingExecutorService();
+    TestConfiguration configuration = new TestConfiguration();
+    configuration.jobExecutorService(executor);
+    configuration.start();
+    JobServiceImpl jobService = configuration.get(JobServiceImpl.class);
+    JobStore jobStore = configuration.get(JobStore.class);
+    // prevents the job service from starting the timer
+    jobService.isRunning = true;
+    jobService.maxJobClaimBatchSize = 2;
+    jobService.jobQueueHighWaterMark = 3;
+    jobService.jobQueueLowWaterMark = 1;
+
+    for (int i=0; i<6; i++) {
+      jobService.saveJob(new Job()
+        .jobType(new CountingJob())
+        .dueDate(Time.now()));
+    }
+
+    jobService.checkJobs();
+    assertTrue(jobService.isClaimingPaused());
+    assertEquals(3, executor.getQueueDepth());
+    assertEquals(3, jobStore.findAllJobs().size());
+
+    // no claiming till the queue drained below the low water mark
+    jobService.checkJobs();
+    assertEquals(3, executor.getQueueDepth());
+    executor.runNext();
+    assertTrue(jobService.isClaimingPaused());
+
+    // the execution that drains the queue resumes claiming
+    executor.runNext();
+    assertFalse(jobService.isClaimingPaused());
+    while (executor.getQueueDepth()>0) {
+      executor.runNext();
+    }
+
+    assertEquals(6, CountingJob.executions);
+    assertEquals(0, jobStore.findAllJobs().size());
+    assertEquals(6, jobService.getClaimToStartLatency().getCount());
+  }
+
+  @Test
+  public void testJobExecutorServiceIsOnlyRegisteredByName() throws Exception {
+    QueueingExecutorService executor = new QueueingExecutorService();
+    TestConfiguration configuration = new TestConfiguration();
+    configuration.jobExecutorService(executor);
+    configuration.start();
+    WorkflowEngineImpl workflowEngine = configuration.get(WorkflowEngineImpl.class);
+    // looking up the job pool by name must not make it the executor for continuations
+    assertSame(executor, configuration.get(JobServiceImpl.JOB_EXECUTOR_SERVICE));
+    assertNotSame(executor, configuration.get(ExecutorService.class));
+    assertNotSame(executor, workflowEngine.executorService);
+
+    workflowEngine.shutdown();
+    assertTrue(executor.isShutdown);
+  }
+}
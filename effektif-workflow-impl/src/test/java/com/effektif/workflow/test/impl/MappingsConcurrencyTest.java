@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.effektif.workflow.api.activities.EndEvent;
+import com.effektif.workflow.api.activities.ExclusiveGateway;
+import com.effektif.workflow.api.activities.ReceiveTask;
+import com.effektif.workflow.api.activities.StartEvent;
+import com.effektif.workflow.api.condition.Equals;
+import com.effektif.workflow.api.types.NumberType;
+import com.effektif.workflow.api.workflow.ExecutableWorkflow;
+import com.effektif.workflow.api.workflow.Transition;
+import com.effektif.workflow.impl.json.DefaultJsonStreamMapper;
+import com.effektif.workflow.impl.json.JsonStreamMapper;
+
+
+public class MappingsConcurrencyTest {
+
+  static final int THREADS = 8;
+
+  @Test
+  public void testConcurrentDiscovery() throws Exception {
+    final ExecutableWorkflow workflow = createWorkflow();
+    final String expectedJson = new DefaultJsonStreamMapper().write(workflow);
+
+    // a fresh mapper, so that all threads race to discover the same types
+    final JsonStreamMapper jsonStreamMapper = new DefaultJsonStreamMapper();
+    final CountDownLatch startGate = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i=0; i<THREADS; i++) {
+        results.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            startGate.await();
+            String json = jsonStreamMapper.write(workflow);
+            ExecutableWorkflow read = jsonStreamMapper.readString(json, ExecutableWorkflow.class);
+            return jsonStreamMapper.write(read);
+          }
+        }));
+      }
+      startGate.countDown();
+      for (Future<String> result: results) {
+        assertEquals(expectedJson, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  ExecutableWorkflow createWorkflow() {
+    return new ExecutableWorkflow()
+      .sourceWorkflowId("concurrent")
+      .variable("amount", NumberType.INSTANCE)
+      .property("owner", "ops")
+      .activity("start", new StartEvent()
+        .transitionTo("check"))
+      .activity("check", new ExclusiveGateway()
+        .defaultTransitionId("default"))
+      .transition(new Transition()
+        .fromId("check").toId("wait")
+        .condition(new Equals()
+          .leftExpression("amount")
+          .rightValue(5)))
+      .transition(new Transition()
+        .id("default")
+        .fromId("check").toId("end"))
+      .activity("wait", new ReceiveTask()
+        .transitionTo("end"))
+      .activity("end", new EndEvent());
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.effektif.workflow.api.activities.ReceiveTask;
+import com.effektif.workflow.api.model.VariableValues;
+import com.effektif.workflow.api.types.TextType;
+import com.effektif.workflow.api.workflow.ExecutableWorkflow;
+import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
+import com.effektif.workflow.impl.WorkflowEngineImpl;
+import com.effektif.workflow.impl.metrics.Histogram;
+import com.effektif.workflow.impl.metrics.JmxMetricsExporter;
+import com.effektif.workflow.impl.metrics.MetricsListener;
+import com.effektif.workflow.impl.metrics.MetricsRegistry;
+import com.effektif.workflow.test.WorkflowTest;
+
+
+public class MetricsListenerTest extends WorkflowTest {
+
+  MetricsRegistry metricsRegistry;
+  MetricsListener metricsListener;
+
+  @Override
+  @Before
+  public void initializeWorkflowEngine() {
+    super.initializeWorkflowEngine();
+    metricsRegistry = new MetricsRegistry();
+    metricsListener = new MetricsListener(metricsRegistry);
+    ((WorkflowEngineImpl) workflowEngine).addWorkflowExecutionListener(metricsListener);
+  }
+
+  @After
+  public void removeMetricsListener() {
+    ((WorkflowEngineImpl) workflowEngine).removeWorkflowExecutionListener(metricsListener);
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .sourceWorkflowId("metrics")
+      .activity("a", msgValue("a").transitionTo("r"))
+      .activity("r", new ReceiveTask());
+    deploy(workflow);
+
+    WorkflowInstance workflowInstance = start(workflow);
+    endTask(workflowInstance, "r");
+
+    assertEquals(1, metricsRegistry.getCount(MetricsListener.WORKFLOW_INSTANCES_STARTED));
+    assertEquals(1, metricsRegistry.getCount(MetricsListener.WORKFLOW_INSTANCES_ENDED));
+    assertEquals(1, metricsRegistry.getCount("workflow.metrics.started"));
+    assertEquals(1, metricsRegistry.getCount("activityType.ReceiveTask.started"));
+    assertEquals(1, metricsRegistry.getHistogram("activityType.JavaServiceTask.duration").getCount());
+    assertEquals(1, metricsRegistry.getHistogram("workflow.metrics.duration").getCount());
+    // one lock for the start and one for the message
+    assertEquals(2, metricsRegistry.getHistogram(MetricsListener.LOCK_HOLD_TIME).getCount());
+
+    JmxMetricsExporter exporter = new JmxMetricsExporter();
+    exporter.start(metricsRegistry);
+    try {
+      Object started = ManagementFactory.getPlatformMBeanServer()
+        .getAttribute(new ObjectName(JmxMetricsExporter.DEFAULT_OBJECT_NAME), "workflow.metrics.started");
+      assertEquals(1L, started);
+    } finally {
+      exporter.stop();
+    }
+  }
+
+  @Test
+  public void testUnlocksWithoutExecutionAreCounted() throws Exception {
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .variable("v", new TextType())
+      .activity("r", new ReceiveTask());
+    deploy(workflow);
+
+    WorkflowInstance workflowInstance = start(workflow);
+    assertEquals(1, metricsRegistry.getCount(MetricsListener.UNLOCKS));
+
+    workflowEngine.setVariableValues(workflowInstance.getId(), new VariableValues().value("v", "x"));
+    assertEquals(2, metricsRegistry.getCount(MetricsListener.UNLOCKS));
+
+    try {
+      workflowEngine.setVariableValues(workflowInstance.getId(), "unexisting", new VariableValues().value("v", "y"));
+      fail("expected exception");
+    } catch (RuntimeException e) {
+      // the error path unlocks as well
+    }
+    assertEquals(3, metricsRegistry.getCount(MetricsListener.UNLOCKS));
+  }
+
+  @Test
+  public void testHistogramPercentiles() {
+    Histogram histogram = new Histogram();
+    for (int i=1; i<=100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(100, histogram.getMax());
+    assertEquals(50.5, histogram.getMean(), 0.001);
+    assertEquals(50, histogram.getPercentile(50));
+    assertEquals(100, histogram.getPercentile(99));
+  }
+}
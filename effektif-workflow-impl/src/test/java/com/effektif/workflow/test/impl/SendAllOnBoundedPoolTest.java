@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.effektif.workflow.api.WorkflowEngine;
+import com.effektif.workflow.api.activities.ReceiveTask;
+import com.effektif.workflow.api.model.Message;
+import com.effektif.workflow.api.model.MessageResult;
+import com.effektif.workflow.api.model.TriggerInstance;
+import com.effektif.workflow.api.workflow.ExecutableWorkflow;
+import com.effektif.workflow.api.workflowinstance.WorkflowInstance;
+import com.effektif.workflow.impl.ThreadPerTaskExecutorService;
+import com.effektif.workflow.impl.memory.TestConfiguration;
+import com.effektif.workflow.test.WorkflowTest;
+
+
+public class SendAllOnBoundedPoolTest {
+
+  @Test
+  public void testSendAllFromTheOnlyPoolThread() throws Exception {
+    // a pool of a single platform thread
+    final ThreadPerTaskExecutorService executorService = new ThreadPerTaskExecutorService(1) {
+      @Override
+      protected java.util.concurrent.ExecutorService createVirtualThreadExecutor() {
+        return null;
+      }
+    };
+    TestConfiguration configuration = new TestConfiguration();
+    configuration.ingredient(executorService);
+    configuration.start();
+    final WorkflowEngine workflowEngine = configuration.getWorkflowEngine();
+
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .activity("one", new ReceiveTask());
+    workflow.setId(workflowEngine.deployWorkflow(workflow).checkNoErrors().getWorkflowId());
+    final List<Message> messages = new ArrayList<>();
+    for (int i=0; i<3; i++) {
+      WorkflowInstance workflowInstance = workflowEngine.start(new TriggerInstance().workflowId(workflow.getId()));
+      messages.add(new Message()
+        .workflowInstanceId(workflowInstance.getId())
+        .activityInstanceId(WorkflowTest.getActivityInstanceId(workflowInstance, "one")));
+    }
+
+    try {
+      // sendAll runs on the only thread of the pool, so it can't wait for tasks queued behind it
+      List<MessageResult> results = CompletableFuture.supplyAsync(new Supplier<List<MessageResult>>() {
+        @Override
+        public List<MessageResult> get() {
+          return workflowEngine.sendAll(messages);
+        }
+      }, executorService.executor).get(10, TimeUnit.SECONDS);
+
+      assertEquals(3, results.size());
+      for (MessageResult result: results) {
+        assertTrue(result.isSuccess());
+        assertTrue(result.getWorkflowInstance().isEnded());
+      }
+    } finally {
+      executorService.shutdown();
+    }
+  }
+}
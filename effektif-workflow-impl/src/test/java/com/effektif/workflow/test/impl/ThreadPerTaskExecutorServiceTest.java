@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Effektif GmbH.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.effektif.workflow.test.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.effektif.workflow.impl.ThreadPerTaskExecutorService;
+
+
+public class ThreadPerTaskExecutorServiceTest {
+
+  @Test
+  public void testConcurrencyLimit() throws Exception {
+    ThreadPerTaskExecutorService executorService = new ThreadPerTaskExecutorService(2);
+    executorService.brew(null);
+
+    final AtomicInteger executing = new AtomicInteger();
+    final AtomicInteger maxExecuting = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(10);
+    for (int i=0; i<10; i++) {
+      executorService.execute(new Runnable() {
+        public void run() {
+          int current = executing.incrementAndGet();
+          synchronized (maxExecuting) {
+            maxExecuting.set(Math.max(maxExecuting.get(), current));
+          }
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          executing.decrementAndGet();
+          done.countDown();
+        }
+      });
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    executorService.shutdown();
+    assertTrue(maxExecuting.get()<=2);
+    assertEquals(0, executorService.getQueueDepth());
+  }
+
+  @Test
+  public void testPlatformThreadsAreBoundedByMaxConcurrency() throws Exception {
+    ThreadPerTaskExecutorService executorService = new ThreadPerTaskExecutorService(2) {
+      @Override
+      protected java.util.concurrent.ExecutorService createVirtualThreadExecutor() {
+        return null;
+      }
+    };
+    executorService.threadNamePrefix("bounded-");
+    executorService.brew(null);
+    assertFalse(executorService.isVirtual);
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(10);
+    final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+    for (int i=0; i<10; i++) {
+      executorService.execute(new Runnable() {
+        public void run() {
+          threadNames.add(Thread.currentThread().getName());
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          done.countDown();
+        }
+      });
+    }
+
+    // the commands that can't execute wait in the queue, not in a thread
+    assertEquals(8, executorService.getQueueDepth());
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    executorService.shutdown();
+    assertTrue(threadNames.size()<=2);
+  }
+}
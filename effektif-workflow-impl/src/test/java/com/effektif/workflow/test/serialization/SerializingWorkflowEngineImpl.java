@@ -24,9 +24,11 @@ import org.slf4j.LoggerFactory;
 import com.effektif.workflow.api.WorkflowEngine;
 import com.effektif.workflow.api.model.Deployment;
 import com.effektif.workflow.api.model.Message;
+import com.effektif.workflow.api.model.MessageResult;
 import com.effektif.workflow.api.model.TriggerInstance;
 import com.effektif.workflow.api.model.VariableValues;
 import com.effektif.workflow.api.model.WorkflowInstanceId;
+import com.effektif.workflow.api.query.QueryIterator;
 import com.effektif.workflow.api.query.WorkflowInstanceQuery;
 import com.effektif.workflow.api.query.WorkflowQuery;
 import com.effektif.workflow.api.workflow.ExecutableWorkflow;
@@ -106,6 +108,24 @@ public class SerializingWorkflowEngineImpl implements WorkflowEngine {
     return workflowInstance;
   }
 
+  @Override
+  public List<MessageResult> sendAll(List<Message> messages) {
+    log.debug("sendAll");
+    List<Message> wirizedMessages = new ArrayList<>();
+    for (Message message: messages) {
+      wirizedMessages.add(wireize(" >>message>> ", message));
+    }
+    List<MessageResult> results = workflowEngine.sendAll(wirizedMessages);
+    for (int i=0; i<results.size(); i++) {
+      MessageResult result = results.get(i);
+      result.setMessage(messages.get(i));
+      if (result.getWorkflowInstance()!=null) {
+        result.setWorkflowInstance(wireize("  <<workflowInstance<< ", result.getWorkflowInstance()));
+      }
+    }
+    return results;
+  }
+
   @Override
   public WorkflowInstance move(WorkflowInstanceId workflowInstanceId, String activityInstanceId, String newActivityId) {
     log.debug("moveWorkflowInstance");
@@ -163,6 +183,27 @@ public class SerializingWorkflowEngineImpl implements WorkflowEngine {
     return wirizedWorkflowInstances;
   }
 
+  @Override
+  public QueryIterator<WorkflowInstance> iterateWorkflowInstances(WorkflowInstanceQuery query) {
+    log.debug("iterateWorkflowInstances");
+    query = wireize(" >>query>>", query);
+    final QueryIterator<WorkflowInstance> workflowInstances = workflowEngine.iterateWorkflowInstances(query);
+    return new QueryIterator<WorkflowInstance>() {
+      @Override
+      public boolean hasNext() {
+        return workflowInstances.hasNext();
+      }
+      @Override
+      public WorkflowInstance next() {
+        return wireize("  <-workflowInstance-", workflowInstances.next());
+      }
+      @Override
+      public void close() {
+        workflowInstances.close();
+      }
+    };
+  }
+
   @Override
   public void deleteWorkflowInstances(WorkflowInstanceQuery query) {
     log.debug("deleteWorkflowInstances");
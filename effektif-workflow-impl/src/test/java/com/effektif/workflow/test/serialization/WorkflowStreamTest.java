@@ -15,6 +15,9 @@ package com.effektif.workflow.test.serialization;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -303,6 +306,39 @@ public class WorkflowStreamTest {
     assertEquals("var1", activity.getOutputs().get("out1"));
   }
 
+  @Test
+  public void testTypeFieldAfterOtherFields() {
+    String json = "{\"activities\":[{\"id\":\"a\",\"color\":\"red\",\"type\":\"task\",\"defaultTransitionId\":\"t\"}],"
+      + "\"priority\":3}";
+    ExecutableWorkflow workflow = getJsonStreamMapper().readString(json, ExecutableWorkflow.class);
+
+    assertEquals(3, workflow.getProperty("priority"));
+    NoneTask task = (NoneTask) workflow.getActivities().get(0);
+    assertEquals("a", task.getId());
+    assertEquals("t", task.getDefaultTransitionId());
+    assertEquals("red", task.getProperty("color"));
+    assertNull(task.getProperty("type"));
+  }
+
+  @Test
+  public void testUtf8Bytes() {
+    ExecutableWorkflow workflow = new ExecutableWorkflow()
+      .name("Grüße – 日本")
+      .activity("a", new NoneTask());
+    JsonStreamMapper jsonStreamMapper = getJsonStreamMapper();
+    String jsonString = jsonStreamMapper.write(workflow);
+    byte[] jsonBytes = jsonStreamMapper.writeBytes(workflow);
+    assertArrayEquals(jsonString.getBytes(StandardCharsets.UTF_8), jsonBytes);
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    jsonStreamMapper.write(workflow, outputStream);
+    assertArrayEquals(jsonBytes, outputStream.toByteArray());
+    assertEquals(jsonBytes.length, jsonStreamMapper.writeByteBuffer(workflow).remaining());
+
+    workflow = jsonStreamMapper.read(new ByteArrayInputStream(jsonBytes), ExecutableWorkflow.class);
+    assertEquals("Grüße – 日本", workflow.getName());
+  }
+
   @Test
   public void testVariables() {
     ExecutableWorkflow workflow = new ExecutableWorkflow()